@@ -0,0 +1,119 @@
+package com.lasley.kts_provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.lasley.kts_provider.data.Album;
+import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.database.ContentDatabase;
+import com.lasley.kts_provider.database.DataDao;
+import com.lasley.kts_provider.database.DatabaseHelper;
+import com.lasley.kts_provider.database.DatabaseHistory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Typed column writes, alone and inside applyBatch
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchWriteTest {
+    private static final String DATABASE_NAME = "batch-write-test.db";
+
+    private Context context;
+    private ContentDatabase database;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setup() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = ContentDatabase.create(context, DATABASE_NAME);
+        DatabaseHistory.init(database);
+        helper = new DatabaseHelper(database);
+    }
+
+    @After
+    public void teardown() {
+        DatabaseHistory.shutdown();
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private static Uri itemUri(String path, String id) {
+        return Uri.parse(Constants.AUTHORITY + "/" + path).buildUpon()
+            .appendQueryParameter("id", id).build();
+    }
+
+    @Test
+    public void batchInsertKeepsTypedTimestamps() throws Exception {
+        String artistID = UUID.randomUUID().toString();
+        String albumID = UUID.randomUUID().toString();
+        long updatedTime = 1_700_000_000_000L;
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(itemUri("artist", artistID))
+            .withValue("artist_id", artistID)
+            .withValue("name", "artist")
+            .withValue("createdTime", 0L)
+            .withValue("updatedTime", updatedTime)
+            .build());
+        // a small time would read as operation 1's index if taken for a back-reference
+        operations.add(ContentProviderOperation.newInsert(itemUri("album", albumID))
+            .withValue("album_id", albumID)
+            .withValue("name", "album")
+            .withValue("createdTime", 1L)
+            .withValue("updatedTime", updatedTime)
+            .withValueBackReference("artist_id", 0)
+            .build());
+
+        ContentProviderResult[] results = helper.applyBatch(operations);
+        assertEquals(2, results.length);
+
+        DataDao access = database.dataDao();
+        Artist artist = access.getArtistItem(artistID);
+        assertNotNull(artist);
+        assertEquals(0L, artist.createdTime);
+        assertEquals(updatedTime, artist.updatedTime);
+
+        Album album = access.getAlbumItem(albumID);
+        assertNotNull(album);
+        assertEquals(artistID, album.artist);
+        assertEquals(1L, album.createdTime);
+        assertEquals(updatedTime, album.updatedTime);
+    }
+
+    @Test
+    public void typedUpdateMovesAlbum() {
+        Artist from = new Artist("from");
+        Artist to = new Artist("to");
+        Album album = new Album("album", from);
+        DataDao access = database.dataDao();
+        access.insert(from);
+        access.insert(to);
+        access.insert(album);
+
+        ContentValues values = new ContentValues();
+        values.put("artist_id", to.uuid);
+        assertEquals(1, helper.update(itemUri("album", album.uuid), values, null, null));
+
+        Album moved = access.getAlbumItem(album.uuid);
+        assertNotNull(moved);
+        assertEquals(to.uuid, moved.artist);
+        assertEquals("album", moved.name);
+    }
+}
@@ -0,0 +1,120 @@
+package com.lasley.kts_provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.lasley.kts_provider.data.Album;
+import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.database.ContentDatabase;
+import com.lasley.kts_provider.database.DataDao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Readers keep going while a write transaction is open (WAL mode)
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadTest {
+    private static final String DATABASE_NAME = "concurrent-read-test.db";
+    private static final int READERS = ContentDatabase.READER_CONNECTIONS;
+    private static final int ALBUMS = 200;
+
+    private Context context;
+    private ContentDatabase database;
+
+    @Before
+    public void setup() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = ContentDatabase.create(context, DATABASE_NAME);
+
+        Artist artist = new Artist("artist");
+        Album[] albums = new Album[ALBUMS];
+        for (int i = 0; i < ALBUMS; i++)
+            albums[i] = new Album("album " + i, artist);
+        DataDao access = database.dataDao();
+        access.insert(artist);
+        access.insert(albums);
+    }
+
+    @After
+    public void teardown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void readersProgressDuringWriteTransaction() throws Exception {
+        DataDao access = database.dataDao();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean committed = new AtomicBoolean(false);
+
+        Thread writer = new Thread(() -> database.runInTransaction(() -> {
+            Artist artist = new Artist("writer");
+            access.insert(artist);
+            for (int i = 0; i < ALBUMS; i++)
+                access.insert(new Album("pending " + i, artist));
+            writing.countDown();
+            try {
+                // a long transaction; held until the readers are done
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            committed.set(true);
+        }));
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        AtomicInteger[] reads = new AtomicInteger[READERS];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+
+        for (int r = 0; r < READERS; r++) {
+            AtomicInteger count = reads[r] = new AtomicInteger();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < until) {
+                        // the open transaction isn't visible yet
+                        assertEquals(ALBUMS, access.countAlbums());
+                        if (!committed.get()) count.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (Thread reader : readers)
+            reader.join(5000);
+        assertFalse(committed.get());
+        release.countDown();
+        writer.join(5000);
+
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        for (int r = 0; r < READERS; r++)
+            assertTrue("reader " + r + " made no progress", reads[r].get() > 0);
+        assertEquals(ALBUMS * 2, access.countAlbums());
+    }
+}
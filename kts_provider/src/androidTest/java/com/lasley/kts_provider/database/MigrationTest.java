@@ -0,0 +1,138 @@
+package com.lasley.kts_provider.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A populated version 1 database (the first release's schema) migrated to the current version
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String DATABASE_NAME = "migration-test.db";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(), ContentDatabase.class
+    );
+
+    private Context context;
+
+    private final String removedArtist = UUID.randomUUID().toString();
+    private final String moonArtist = UUID.randomUUID().toString();
+    private final String sunArtist = UUID.randomUUID().toString();
+    private final String[] albums = {
+        UUID.randomUUID().toString(), UUID.randomUUID().toString(), UUID.randomUUID().toString()
+    };
+
+    @Before
+    public void setup() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void teardown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private void populateVersion1() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(DATABASE_NAME, 1)) {
+            String artist = "INSERT INTO `_artist` " +
+                "(`artist_id`, `name`, `album_ids`, `createdTime`, `updatedTime`) VALUES (?, ?, ?, ?, ?)";
+            db.execSQL(artist, new Object[]{removedArtist, "Removed", "", 1, 1});
+            db.execSQL(artist, new Object[]{moonArtist, "Moon Garden", albums[0] + "," + albums[1], 2, 2});
+            db.execSQL(artist, new Object[]{sunArtist, "Sun Trio", albums[2], 3, 3});
+            // leaves a gap in the rowids, so a rebuilt table which renumbers them breaks the search
+            db.execSQL("DELETE FROM `_artist` WHERE `artist_id` = ?", new Object[]{removedArtist});
+
+            String album = "INSERT INTO `_album` " +
+                "(`album_id`, `name`, `artist_id`, `createdTime`, `updatedTime`) VALUES (?, ?, ?, ?, ?)";
+            db.execSQL(album, new Object[]{albums[0], "Dark Side", moonArtist, 4, 4});
+            db.execSQL(album, new Object[]{albums[1], "Tides", moonArtist, 5, 5});
+            db.execSQL(album, new Object[]{albums[2], "Morning", sunArtist, 6, 6});
+
+            db.execSQL("INSERT INTO `_historyActions` " +
+                "(`timestamp`, `actionType`, `actionResult`, `item_id`, `comments`) VALUES (?, ?, ?, ?, ?)",
+                new Object[]{7, "Query", "OK", sunArtist, ""});
+        }
+    }
+
+    @Test
+    public void migratesVersion1ToCurrent() throws IOException {
+        populateVersion1();
+
+        // validated against the exported schema of the current version
+        helper.runMigrationsAndValidate(DATABASE_NAME, 8, true, DatabaseMigrations.ALL).close();
+
+        // and by Room itself, against the entities, as the app opens it
+        ContentDatabase database = ContentDatabase.create(context, DATABASE_NAME);
+        try {
+            DataDao access = database.dataDao();
+
+            try (Cursor rows = access.searchArtists(DatabaseHelper.toMatchExpression("sun"), "sun", 10)) {
+                assertEquals(1, rows.getCount());
+                rows.moveToFirst();
+                assertEquals(sunArtist, rows.getString(rows.getColumnIndexOrThrow("artist_id")));
+            }
+            try (Cursor rows = access.searchArtists(DatabaseHelper.toMatchExpression("garden"), "garden", 10)) {
+                assertEquals(1, rows.getCount());
+                rows.moveToFirst();
+                assertEquals(moonArtist, rows.getString(rows.getColumnIndexOrThrow("artist_id")));
+            }
+            try (Cursor rows = access.searchAlbums(DatabaseHelper.toMatchExpression("dark"), "dark", 10)) {
+                assertEquals(1, rows.getCount());
+                rows.moveToFirst();
+                assertEquals(albums[0], rows.getString(rows.getColumnIndexOrThrow("album_id")));
+            }
+
+            Set<String> expected = new HashSet<>();
+            expected.add(moonArtist);
+            expected.add(sunArtist);
+            for (String album : albums) expected.add(album);
+
+            Set<String> logged = new HashSet<>();
+            try (Cursor changes = ChangeLog.changesSince(database, 0, 100)) {
+                assertFalse(changes.getExtras().getBoolean(DatabaseHelper.EXTRA_RESYNC));
+                int id = changes.getColumnIndexOrThrow("item_id");
+                int deleted = changes.getColumnIndexOrThrow("deleted");
+                int content = changes.getColumnIndexOrThrow("content");
+                while (changes.moveToNext()) {
+                    assertEquals(0, changes.getInt(deleted));
+                    assertFalse(changes.isNull(content));
+                    logged.add(changes.getString(id));
+                }
+            }
+            assertEquals(expected, logged);
+
+            try (Cursor history = database.query("SELECT `actionType`, `actionResult`, `occurrences` " +
+                "FROM `_historyActions`", null)) {
+                assertTrue(history.moveToFirst());
+                assertEquals(DatabaseHistory.HistoryToken.Query.code, history.getInt(0));
+                assertEquals(HistoryActionToken.OK.code, history.getInt(1));
+                assertEquals(1, history.getInt(2));
+            }
+        } finally {
+            database.close();
+        }
+    }
+}
@@ -2,15 +2,17 @@ package com.lasley.kts_provider;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import android.net.Uri;
+import android.content.ContentResolver;
 import android.os.Bundle;
 import android.os.CountDownTimer;
 import android.view.LayoutInflater;
 
 import com.lasley.kts_provider.data.Album;
 import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.database.ChangeNotifier;
 import com.lasley.kts_provider.database.ContentDatabase;
 import com.lasley.kts_provider.database.DataDao;
+import com.lasley.kts_provider.database.EntityCache;
 import com.lasley.kts_provider.databinding.ActivityMainBinding;
 
 import java.util.ArrayList;
@@ -18,6 +20,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 
 public class MainActivity extends AppCompatActivity {
@@ -30,6 +34,9 @@ public class MainActivity extends AppCompatActivity {
 
     ContentDatabase database = ContentDatabase.getInstance(this);
 
+    // database work of this screen, in order and off the main thread
+    private final ExecutorService dbWork = Executors.newSingleThreadExecutor();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -40,15 +47,27 @@ public class MainActivity extends AppCompatActivity {
         binding.repeatSeconds.setMaxValue(maxTime);
         binding.repeatSeconds.setValue(30);
 
+        ChangeNotifier.init(this);
         initReloadActions();
-        dbSetup();
+        dbWork.execute(this::dbSetup);
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        dbWork.shutdown();
+        super.onDestroy();
     }
 
     private void initReloadActions(){
         TimerTask timerTask = new TimerTask() {
             @Override
             public void run() {
-                genActions();
+                // the options are read on the main thread
+                runOnUiThread(() -> genActions());
             }
         };
 
@@ -97,12 +116,20 @@ public class MainActivity extends AppCompatActivity {
         boolean newAlbums = binding.optionArtists.isChecked();
         boolean shuffleAlbum = binding.optionArtists.isChecked();
 
+        if (!dbWork.isShutdown())
+            dbWork.execute(() -> generate(newArtists, newAlbums, shuffleAlbum));
+    }
+
+    private void generate(boolean newArtists, boolean newAlbums, boolean shuffleAlbum) {
         DataDao access = database.dataDao();
+        // observers get one notification, with every item changed in this run
+        boolean ownsChanges = ChangeNotifier.beginBatch();
 
         if (newArtists) {
             int artistID = Math.abs(new Random().nextInt(300));
             Artist newArtist = new Artist("Artist #" + artistID);
             access.insert(newArtist);
+            ChangeNotifier.artistChanged(newArtist.uuid, ContentResolver.NOTIFY_INSERT);
         }
 
         if (newAlbums) {
@@ -112,7 +139,7 @@ public class MainActivity extends AppCompatActivity {
             int albumID = Math.abs(new Random().nextInt(300));
             Album album = new Album("Album #" + albumID, artist);
             access.insert(album);
-            access.update(artist);
+            ChangeNotifier.albumChanged(album.uuid, ContentResolver.NOTIFY_INSERT);
         }
 
         if (shuffleAlbum) {
@@ -120,7 +147,7 @@ public class MainActivity extends AppCompatActivity {
             1. get a random artist (remove from list)
             2. get a random album from that artist
             3. get a new random artist (or make one, if none are available)
-            4. change the album's (name, artist)
+            4. move the album to the new artist (a single album row update)
             5. save data
              */
 
@@ -132,11 +159,11 @@ public class MainActivity extends AppCompatActivity {
             Artist artist = artists.get(artistIndex);
             artists.remove(artist);
 
-            List<String> albumIDs = artist.albumIDs();
+            List<String> albumIDs = access.getArtistAlbumIDs(artist.uuid);
             Album album;
             if (!albumIDs.isEmpty()) {
                 int albumIndex = new Random().nextInt(albumIDs.size());
-                album = access.getAlbumItem(albumIDs.get(albumIndex));
+                album = EntityCache.album(access, albumIDs.get(albumIndex));
                 System.out.println("get album");
             } else {
                 // artist has no albums, so make one for later
@@ -157,37 +184,33 @@ public class MainActivity extends AppCompatActivity {
             }
 
             long updatingTime = System.currentTimeMillis();
-            artist.updatedTime = updatingTime;
-            album.updatedTime = updatingTime;
-            newArtist.updatedTime = updatingTime;
 
-            artist.removeAlbum(album.uuid);
-            album.artist = newArtist.uuid;
-            newArtist.addAlbum(album.uuid);
+            if (createdArtist) {
+                access.insert(newArtist);
+                ChangeNotifier.artistChanged(newArtist.uuid, ContentResolver.NOTIFY_INSERT);
+            }
 
-            access.update(artist);
-            if (createdAlbum)
+            if (createdAlbum) {
+                album.artist = newArtist.uuid;
+                album.updatedTime = updatingTime;
                 access.insert(album);
-            else
-                access.update(album);
-
-            if (createdArtist)
-                access.insert(newArtist);
-            else
-                access.update(newArtist);
+                ChangeNotifier.albumChanged(album.uuid, ContentResolver.NOTIFY_INSERT);
+            } else {
+                access.moveAlbum(album.uuid, newArtist.uuid, updatingTime);
+                ChangeNotifier.albumChanged(album.uuid, ContentResolver.NOTIFY_UPDATE);
+            }
         }
 
-        if (newArtists || newAlbums || shuffleAlbum) {
+        if (ownsChanges) {
 //            runOnUiThread(() -> {
 //                Toast.makeText(this, "Data Changed", Toast.LENGTH_SHORT).show();
 //            });
 
-            getContentResolver().notifyChange(Uri.parse(Constants.AUTHORITY), null);
+            ChangeNotifier.endBatch(true);
         }
     }
 
     public void dbSetup() {
-        database.clearAllTables();
         DataDao dataDeo = database.dataDao();
 
         Artist newArtist = new Artist("artist 1");
@@ -198,7 +221,22 @@ public class MainActivity extends AppCompatActivity {
             new Album("ab3", newArtist),
         };
 
-        dataDeo.insert(newArtist);
-        dataDeo.insert(albums);
+        // only the items; the change log keeps its sequence and floor, and logs the deletes,
+        // so clients which synced before this (it runs on every create) see them
+        database.runInTransaction(() -> {
+            dataDeo.deleteAllAlbums();
+            dataDeo.deleteAllArtists();
+            dataDeo.insert(newArtist);
+            dataDeo.insert(albums);
+        });
+
+        // after the writes, so nothing read in between (e.g. a missing item) stays cached
+        boolean ownsChanges = ChangeNotifier.beginBatch();
+        EntityCache.clear();
+        ChangeNotifier.artistChanged(newArtist.uuid, ContentResolver.NOTIFY_INSERT);
+        for (Album album : albums)
+            ChangeNotifier.albumChanged(album.uuid, ContentResolver.NOTIFY_INSERT);
+        if (ownsChanges)
+            ChangeNotifier.endBatch(true);
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,28 @@ package com.lasley.kts_provider;
 
 import android.app.Application;
 
+import com.lasley.kts_provider.database.DatabaseHistory;
+
 public class ProviderApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
 //        Database.init(this);
     }
+
+    // how long the main thread may wait for queued history, once the process is a kill candidate
+    private static final long BACKGROUND_FLUSH_MILLIS = 200;
+
+    /**
+     * The only point queued history is saved ahead of a kill; there's no callback when the process
+     * dies, so events still in the writer's flush window at that point are lost
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND)
+            DatabaseHistory.flush(BACKGROUND_FLUSH_MILLIS);
+        else if (level >= TRIM_MEMORY_UI_HIDDEN)
+            DatabaseHistory.requestFlush();
+    }
 }
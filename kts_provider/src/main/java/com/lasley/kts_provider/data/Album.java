@@ -6,6 +6,7 @@ import androidx.room.Embedded;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.Relation;
 
@@ -14,7 +15,17 @@ import com.google.gson.annotations.SerializedName;
 import java.util.List;
 import java.util.UUID;
 
-@Entity(tableName = "_album")
+@Entity(
+    tableName = "_album",
+    indices = {
+        // keyset pages of all albums, and of an artist's albums
+        @Index({"updatedTime", "album_id"}),
+        @Index({"artist_id", "updatedTime", "album_id"}),
+        // sorted by name, and name prefix filters; covers (album_id, name) projections
+        @Index({"name", "album_id"}),
+        @Index({"artist_id", "name", "album_id"})
+    }
+)
 public class Album {
     @PrimaryKey
     @ColumnInfo(name = "album_id")
@@ -23,7 +34,7 @@ public class Album {
     public String uuid = UUID.randomUUID().toString();
     public String name;
 
-    @ColumnInfo(name = "artist_id", index = true)
+    @ColumnInfo(name = "artist_id")
     @SerializedName("artist_id")
     public String artist;
 
@@ -41,9 +52,6 @@ public class Album {
     public Album(String name, Artist artist) {
         this.name = name;
         this.artist = artist.uuid;
-
-        if (!artist.albums.isEmpty())
-            artist.albums += ",";
-        artist.albums += uuid;
+        artist.addAlbum(uuid);
     }
 }
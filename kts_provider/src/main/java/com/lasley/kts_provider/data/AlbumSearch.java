@@ -0,0 +1,17 @@
+package com.lasley.kts_provider.data;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over {@link Album#name}.
+ * <p>
+ * External content table; Room keeps it in sync with "_album" through triggers,
+ * and each row's docid is the rowid of its album.
+ */
+@Fts4(contentEntity = Album.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "_album_fts")
+public class AlbumSearch {
+    public String name;
+}
@@ -4,6 +4,8 @@ package com.lasley.kts_provider.data;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import androidx.room.Relation;
 
@@ -14,7 +16,15 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
-@Entity(tableName = "_artist")
+@Entity(
+    tableName = "_artist",
+    indices = {
+        // keyset pages of all artists
+        @Index({"updatedTime", "artist_id"}),
+        // sorted by name, and name prefix filters; covers (artist_id, name) projections
+        @Index({"name", "artist_id"})
+    }
+)
 public class Artist {
     @PrimaryKey
     @ColumnInfo(name = "artist_id")
@@ -23,7 +33,14 @@ public class Artist {
     public String uuid = UUID.randomUUID().toString();
 
     public String name;
-    @ColumnInfo(name = "album_ids", index = true)
+
+    /**
+     * Comma-joined album IDs, as sent and received in the "album_ids" JSON field.
+     * <p>
+     * Not stored; the albums of an artist are the "_album" rows with its "artist_id",
+     * and provider queries project this column from them.
+     */
+    @Ignore
     @SerializedName("album_ids")
     public String albums = "";
 
@@ -42,6 +59,8 @@ public class Artist {
 //        this.albums.addAll(albums);
     }
 
+    // in-memory view of [albums]; changes here are not saved with the artist
+
     public List<String> albumIDs() {
         if (albums.isEmpty()) return new ArrayList<>();
         return Arrays.asList(albums.split(","));
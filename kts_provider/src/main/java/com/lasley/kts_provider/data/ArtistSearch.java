@@ -0,0 +1,17 @@
+package com.lasley.kts_provider.data;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over {@link Artist#name}.
+ * <p>
+ * External content table; Room keeps it in sync with "_artist" through triggers,
+ * and each row's docid is the rowid of its artist.
+ */
+@Fts4(contentEntity = Artist.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "_artist_fts")
+public class ArtistSearch {
+    public String name;
+}
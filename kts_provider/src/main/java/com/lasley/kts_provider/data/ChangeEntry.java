@@ -0,0 +1,45 @@
+package com.lasley.kts_provider.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Latest change of an album or artist, for delta sync.
+ * <p>
+ * Written by triggers on "_album" and "_artist", so each entry commits with its change.
+ * An item keeps one entry, which moves to a new [seq] every time the item changes;
+ * deleted items keep theirs as a tombstone until it's compacted.
+ */
+@Entity(
+    tableName = "_changeLog",
+    indices = {
+        @Index(value = {"type", "item_id"}, unique = true)
+    }
+)
+public class ChangeEntry {
+    /**
+     * Position of the change; grows with every change, and is never reused
+     */
+    @PrimaryKey(autoGenerate = true)
+    public long seq;
+
+    /**
+     * "album" or "artist", the same as the "type" of content values
+     */
+    @NonNull
+    public String type = "";
+
+    @ColumnInfo(name = "item_id")
+    @NonNull
+    public String itemID = "";
+
+    /**
+     * Tombstone; the item was deleted
+     */
+    public boolean deleted;
+
+    public long changedTime;
+}
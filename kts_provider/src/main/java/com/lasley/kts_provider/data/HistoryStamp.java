@@ -8,6 +8,8 @@ import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 
 import com.lasley.kts_provider.database.DatabaseHistory;
+import com.lasley.kts_provider.database.HistoryActionToken;
+import com.lasley.kts_provider.database.PathCode;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -16,7 +18,12 @@ import java.util.TimeZone;
 
 @Entity(tableName = "_historyActions")
 public class HistoryStamp {
-    @PrimaryKey
+    /**
+     * Insertion order of the event; unlike [timestamp], this is unique per event
+     */
+    @PrimaryKey(autoGenerate = true)
+    public long sequence;
+
     public long timestamp = System.currentTimeMillis();
 
     /**
@@ -25,10 +32,10 @@ public class HistoryStamp {
      * - Insert
      * - Update
      * - Delete
-     * - Bulk insert
+     * <p>
+     * Stored as {@link DatabaseHistory.HistoryToken#code}
      */
-    @NonNull
-    public String actionType = "None";
+    public int actionType = 0;
 
     /**
      * What was the result of the action:
@@ -36,9 +43,10 @@ public class HistoryStamp {
      * - Not found
      * - Fail (why is in the comments)
      * - Locked
+     * <p>
+     * Stored as {@link HistoryActionToken#code}
      */
-    @Nullable
-    public String actionResult;
+    public int actionResult = 0;
 
     /**
      * What content in question was involved in the history action
@@ -53,6 +61,18 @@ public class HistoryStamp {
     @Nullable
     public String comments;
 
+    /**
+     * {@link PathCode} (ordinal) which the action was requested through
+     */
+    @ColumnInfo(name = "path_code", defaultValue = "0")
+    public int pathCode = 0;
+
+    /**
+     * How many events this row stands for; more than 1 for aggregated rollup rows
+     */
+    @ColumnInfo(defaultValue = "1")
+    public long occurrences = 1;
+
 
     public String time() {
         Date date = new Date(timestamp);
@@ -67,18 +87,27 @@ public class HistoryStamp {
     @NonNull
     @Override
     public String toString() {
-        String result = "Action: " + actionType +
+        DatabaseHistory.HistoryToken action = DatabaseHistory.HistoryToken.fromCode(actionType);
+        HistoryActionToken actionToken = HistoryActionToken.fromCode(actionResult);
+
+        String result = "Action: " + (action == null ? "None" : action.name()) +
             " @{ " + time() + " }";
 
-        if (actionResult != null && !actionResult.isEmpty())
-            result += ", Result: " + actionResult;
+        if (actionToken != null)
+            result += ", Result: " + actionToken.name();
 
         if (itemID != null && !itemID.isEmpty())
             result += ", ID: " + itemID;
 
+        if (pathCode != PathCode.Unknown.ordinal())
+            result += ", Path: " + PathCode.parseToCode(pathCode).name();
+
         if (comments != null && !comments.isEmpty())
             result += ", Comments: " + comments;
 
+        if (occurrences != 1)
+            result += ", Count: " + occurrences;
+
         return result;
     }
 }
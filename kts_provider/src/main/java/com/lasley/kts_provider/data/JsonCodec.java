@@ -0,0 +1,205 @@
+package com.lasley.kts_provider.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Shared JSON codec for {@link Album}, {@link Artist} and {@link HistoryStamp}.
+ * <p>
+ * The adapters stream fields straight between the JSON and the object, without reflection
+ * or an intermediate tree; the field names match what {@link Gson}'s reflection produced.
+ * Unknown fields are skipped, missing fields keep the object's defaults.
+ * {@link #GSON} is thread-safe, and is meant to be reused.
+ */
+public final class JsonCodec {
+
+    public static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(Album.class, new AlbumAdapter().nullSafe())
+        .registerTypeAdapter(Artist.class, new ArtistAdapter().nullSafe())
+        .registerTypeAdapter(HistoryStamp.class, new HistoryStampAdapter().nullSafe())
+        .create();
+
+    private JsonCodec() {
+    }
+
+    @NonNull
+    public static String toJson(@Nullable Object item) {
+        return GSON.toJson(item);
+    }
+
+    /**
+     * @return null if [json] is null, or isn't a valid [type]
+     */
+    @Nullable
+    public static <T> T fromJson(@Nullable String json, @NonNull Class<T> type) {
+        if (json == null) return null;
+        try {
+            return GSON.fromJson(json, type);
+        } catch (RuntimeException ignored) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    static final class AlbumAdapter extends TypeAdapter<Album> {
+        @Override
+        public void write(JsonWriter writer, Album album) throws IOException {
+            writer.beginObject();
+            writer.name("album_id").value(album.uuid);
+            if (album.name != null) writer.name("name").value(album.name);
+            if (album.artist != null) writer.name("artist_id").value(album.artist);
+            writer.name("createdTime").value(album.createdTime);
+            writer.name("updatedTime").value(album.updatedTime);
+            writer.endObject();
+        }
+
+        @Override
+        public Album read(JsonReader reader) throws IOException {
+            Album album = new Album();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "album_id": {
+                        String uuid = nextString(reader);
+                        if (uuid != null) album.uuid = uuid;
+                        break;
+                    }
+                    case "name":
+                        album.name = nextString(reader);
+                        break;
+                    case "artist_id":
+                        album.artist = nextString(reader);
+                        break;
+                    case "createdTime":
+                        album.createdTime = reader.nextLong();
+                        break;
+                    case "updatedTime":
+                        album.updatedTime = reader.nextLong();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return album;
+        }
+    }
+
+    static final class ArtistAdapter extends TypeAdapter<Artist> {
+        @Override
+        public void write(JsonWriter writer, Artist artist) throws IOException {
+            writer.beginObject();
+            writer.name("artist_id").value(artist.uuid);
+            if (artist.name != null) writer.name("name").value(artist.name);
+            if (artist.albums != null) writer.name("album_ids").value(artist.albums);
+            writer.name("createdTime").value(artist.createdTime);
+            writer.name("updatedTime").value(artist.updatedTime);
+            writer.endObject();
+        }
+
+        @Override
+        public Artist read(JsonReader reader) throws IOException {
+            Artist artist = new Artist();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "artist_id": {
+                        String uuid = nextString(reader);
+                        if (uuid != null) artist.uuid = uuid;
+                        break;
+                    }
+                    case "name":
+                        artist.name = nextString(reader);
+                        break;
+                    case "album_ids":
+                        artist.albums = nextString(reader);
+                        break;
+                    case "createdTime":
+                        artist.createdTime = reader.nextLong();
+                        break;
+                    case "updatedTime":
+                        artist.updatedTime = reader.nextLong();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return artist;
+        }
+    }
+
+    static final class HistoryStampAdapter extends TypeAdapter<HistoryStamp> {
+        @Override
+        public void write(JsonWriter writer, HistoryStamp step) throws IOException {
+            writer.beginObject();
+            writer.name("sequence").value(step.sequence);
+            writer.name("timestamp").value(step.timestamp);
+            writer.name("actionType").value(step.actionType);
+            writer.name("actionResult").value(step.actionResult);
+            if (step.itemID != null) writer.name("itemID").value(step.itemID);
+            if (step.comments != null) writer.name("comments").value(step.comments);
+            writer.name("pathCode").value(step.pathCode);
+            writer.name("occurrences").value(step.occurrences);
+            writer.endObject();
+        }
+
+        @Override
+        public HistoryStamp read(JsonReader reader) throws IOException {
+            HistoryStamp step = new HistoryStamp();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "sequence":
+                        step.sequence = reader.nextLong();
+                        break;
+                    case "timestamp":
+                        step.timestamp = reader.nextLong();
+                        break;
+                    case "actionType":
+                        step.actionType = reader.nextInt();
+                        break;
+                    case "actionResult":
+                        step.actionResult = reader.nextInt();
+                        break;
+                    case "itemID":
+                        step.itemID = nextString(reader);
+                        break;
+                    case "comments":
+                        step.comments = nextString(reader);
+                        break;
+                    case "pathCode":
+                        step.pathCode = reader.nextInt();
+                        break;
+                    case "occurrences":
+                        step.occurrences = reader.nextLong();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return step;
+        }
+    }
+}
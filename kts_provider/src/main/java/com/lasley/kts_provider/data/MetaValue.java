@@ -0,0 +1,27 @@
+package com.lasley.kts_provider.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * Named value about the database itself, such as how far the change log has been compacted
+ */
+@Entity(tableName = "_meta")
+public class MetaValue {
+    @PrimaryKey
+    @NonNull
+    public String name = "";
+
+    public long value;
+
+    public MetaValue() {
+    }
+
+    @Ignore
+    public MetaValue(@NonNull String name, long value) {
+        this.name = name;
+        this.value = value;
+    }
+}
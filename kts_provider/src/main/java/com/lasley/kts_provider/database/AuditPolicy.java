@@ -0,0 +1,79 @@
+package com.lasley.kts_provider.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How history events of a (action, {@link PathCode}) pair are recorded.
+ *
+ * @see DatabaseHistory#setPolicy(DatabaseHistory.HistoryToken, PathCode, AuditPolicy)
+ */
+public final class AuditPolicy {
+
+    public enum Mode {
+        /** Every event is written as its own row */
+        Full,
+        /**
+         * Only some successful events are written.
+         * Events with any other result are always written.
+         */
+        Sampled,
+        /** Events are counted in memory, and written periodically as rollup rows */
+        Aggregated,
+        /** Events are not recorded */
+        Off
+    }
+
+    @NonNull
+    public final Mode mode;
+    private final int sampleEvery;
+    private final double sampleRate;
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private AuditPolicy(@NonNull Mode mode, int sampleEvery, double sampleRate) {
+        this.mode = mode;
+        this.sampleEvery = sampleEvery;
+        this.sampleRate = sampleRate;
+    }
+
+    public static AuditPolicy full() {
+        return new AuditPolicy(Mode.Full, 1, 1.0);
+    }
+
+    public static AuditPolicy off() {
+        return new AuditPolicy(Mode.Off, 0, 0.0);
+    }
+
+    public static AuditPolicy aggregated() {
+        return new AuditPolicy(Mode.Aggregated, 0, 0.0);
+    }
+
+    /**
+     * Writes 1 in every [count] successful events
+     */
+    public static AuditPolicy sampleEvery(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("count must be positive");
+        return new AuditPolicy(Mode.Sampled, count, 0.0);
+    }
+
+    /**
+     * Writes each successful event with a chance of [rate] (0.0 - 1.0)
+     */
+    public static AuditPolicy sampleRate(double rate) {
+        if (rate < 0.0 || rate > 1.0)
+            throw new IllegalArgumentException("rate must be within 0.0 - 1.0");
+        return new AuditPolicy(Mode.Sampled, 0, rate);
+    }
+
+    /**
+     * Returns true if the next (sampled) event should be written
+     */
+    boolean sample() {
+        if (sampleEvery > 0)
+            return sampleCounter.getAndIncrement() % sampleEvery == 0;
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
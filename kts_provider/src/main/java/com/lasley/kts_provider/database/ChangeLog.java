@@ -0,0 +1,217 @@
+package com.lasley.kts_provider.database;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+import com.lasley.kts_provider.data.ChangeEntry;
+import com.lasley.kts_provider.data.MetaValue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delta sync over the "_changeLog" table, see {@link ChangeEntry}.
+ * <p>
+ * Tombstones are compacted once they're older than {@link #TOMBSTONE_MAX_AGE_MILLIS}.
+ * The newest compacted sequence is kept as the log's floor; a client which last synced
+ * before the floor may have missed deletes, and is told to do a full resync.
+ */
+class ChangeLog {
+
+    /** Cursor columns of {@link #changesSince} */
+    static final String[] COLUMNS = {"seq", "type", "item_id", "deleted", "content"};
+
+    static final long TOMBSTONE_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    static final long COMPACT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String META_FLOOR = "changelog_floor";
+
+    // elapsed realtime of the last compaction; 0 = not yet this process
+    private static volatile long lastCompaction = 0;
+
+    /**
+     * Changes after [since], oldest first; one row per changed item, with its current content
+     * (JSON, as written through the "content" value) unless it was deleted.
+     * <p>
+     * Extras: {@link DatabaseHelper#EXTRA_HIGH_WATER}, {@link DatabaseHelper#EXTRA_HAS_MORE},
+     * and {@link DatabaseHelper#EXTRA_RESYNC}, in which case there are no rows.
+     */
+    @NonNull
+    static Cursor changesSince(@NonNull ContentDatabase database, long since, int limit) {
+        compactIfDue(database);
+
+        // no transaction: a write transaction would wait for the write lock, and every read here
+        // sees a committed state anyway. Content newer than its entry is fine; the change which
+        // made it is logged again, after the entries read here, and sent on the next pull
+        DataDao access = database.dataDao();
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        Bundle extras = new Bundle();
+
+        List<ChangeEntry> entries = access.getChangesSince(since, limit);
+        // after the entries: a compaction which ran before or while they were read has raised
+        // the floor by now, so its dropped tombstones turn into a resync
+        long floor = floor(access);
+
+        if (since < floor) {
+            extras.putBoolean(DatabaseHelper.EXTRA_RESYNC, true);
+            extras.putBoolean(DatabaseHelper.EXTRA_HAS_MORE, false);
+            // where a full load read after this response continues from
+            extras.putLong(DatabaseHelper.EXTRA_HIGH_WATER, Math.max(floor, access.lastChangeSeq()));
+            cursor.setExtras(extras);
+            return cursor;
+        }
+
+        Map<String, String> albums = new HashMap<>();
+        Map<String, String> artists = new HashMap<>();
+        loadContent(access, entries, albums, artists);
+
+        long highWater = since;
+        for (ChangeEntry entry : entries) {
+            String content = null;
+            if (!entry.deleted)
+                content = "album".equals(entry.type)
+                    ? albums.get(entry.itemID) : artists.get(entry.itemID);
+            cursor.addRow(new Object[]{
+                entry.seq, entry.type, entry.itemID, entry.deleted ? 1 : 0, content
+            });
+            highWater = Math.max(highWater, entry.seq);
+        }
+
+        // a full page may have more after it; either way, only what was read is covered
+        boolean hasMore = entries.size() == limit;
+
+        extras.putBoolean(DatabaseHelper.EXTRA_RESYNC, false);
+        extras.putBoolean(DatabaseHelper.EXTRA_HAS_MORE, hasMore);
+        extras.putLong(DatabaseHelper.EXTRA_HIGH_WATER, highWater);
+        cursor.setExtras(extras);
+        return cursor;
+    }
+
+    /**
+     * Fills [albums] and [artists] with the JSON content of the (not deleted) items of [entries]
+     */
+    private static void loadContent(
+        @NonNull DataDao access,
+        @NonNull List<ChangeEntry> entries,
+        @NonNull Map<String, String> albums,
+        @NonNull Map<String, String> artists
+    ) {
+        List<String> albumIDs = new ArrayList<>();
+        List<String> artistIDs = new ArrayList<>();
+        for (ChangeEntry entry : entries) {
+            if (entry.deleted) continue;
+            if ("album".equals(entry.type))
+                albumIDs.add(entry.itemID);
+            else if ("artist".equals(entry.type))
+                artistIDs.add(entry.itemID);
+        }
+
+        for (int start = 0; start < albumIDs.size(); start += DatabaseHelper.MAX_BOUND_IDS) {
+            List<String> chunk = albumIDs.subList(start, Math.min(albumIDs.size(), start + DatabaseHelper.MAX_BOUND_IDS));
+            try (Cursor rows = access.getAlbumsByID(chunk)) {
+                readContent(rows, "album_id", albums);
+            }
+        }
+        for (int start = 0; start < artistIDs.size(); start += DatabaseHelper.MAX_BOUND_IDS) {
+            List<String> chunk = artistIDs.subList(start, Math.min(artistIDs.size(), start + DatabaseHelper.MAX_BOUND_IDS));
+            try (Cursor rows = access.getArtistsByID(chunk)) {
+                readContent(rows, "artist_id", artists);
+            }
+        }
+    }
+
+    private static void readContent(
+        @NonNull Cursor rows,
+        @NonNull String idColumn,
+        @NonNull Map<String, String> content
+    ) {
+        int idIndex = rows.getColumnIndexOrThrow(idColumn);
+        String[] names = rows.getColumnNames();
+        while (rows.moveToNext()) {
+            StringWriter json = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(json)) {
+                writeRow(writer, rows, names);
+            } catch (IOException e) {
+                // StringWriter doesn't throw
+                throw new IllegalStateException(e);
+            }
+            content.put(rows.getString(idIndex), json.toString());
+        }
+    }
+
+    /**
+     * Writes the current row of [rows] as a JSON object, one field per column of [names]
+     */
+    static void writeRow(
+        @NonNull JsonWriter writer,
+        @NonNull Cursor rows,
+        @NonNull String[] names
+    ) throws IOException {
+        writer.beginObject();
+        for (int i = 0; i < names.length; i++) {
+            writer.name(names[i]);
+            switch (rows.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.value(rows.getLong(i));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.value(rows.getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.nullValue();
+                    break;
+                default:
+                    writer.value(rows.getString(i));
+                    break;
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Newest sequence removed by compaction; clients which synced before it must resync
+     */
+    static long floor(@NonNull DataDao access) {
+        Long floor = access.getMeta(META_FLOOR);
+        return floor == null ? 0 : floor;
+    }
+
+    /**
+     * Runs {@link #compact} if it hasn't run in the last {@link #COMPACT_INTERVAL_MILLIS}
+     */
+    static void compactIfDue(@NonNull ContentDatabase database) {
+        long now = SystemClock.elapsedRealtime();
+        if (lastCompaction != 0 && now - lastCompaction < COMPACT_INTERVAL_MILLIS) return;
+        lastCompaction = now;
+        compact(database, TOMBSTONE_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Removes the tombstones older than [maxAgeMillis], and raises the floor past them.
+     * Entries of items which still exist are never removed.
+     *
+     * @return Tombstones removed
+     */
+    static int compact(@NonNull ContentDatabase database, long maxAgeMillis) {
+        DataDao access = database.dataDao();
+        return database.runInTransaction(() -> {
+            Long newest = access.lastTombstoneBefore(System.currentTimeMillis() - maxAgeMillis);
+            if (newest == null) return 0;
+
+            int removed = access.deleteTombstones(newest);
+            if (newest > floor(access))
+                access.setMeta(new MetaValue(META_FLOOR, newest));
+            return removed;
+        });
+    }
+}
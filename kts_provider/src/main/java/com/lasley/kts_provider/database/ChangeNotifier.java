@@ -0,0 +1,162 @@
+package com.lasley.kts_provider.database;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.lasley.kts_provider.Constants;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item-level change notifications, coalesced into as few
+ * {@link ContentResolver#notifyChange} calls as possible.
+ * <p>
+ * Each change is an item uri ("album?id=...", "artist?id=...") with the
+ * {@link ContentResolver#NOTIFY_INSERT}, NOTIFY_UPDATE or NOTIFY_DELETE flag.
+ * Changes made inside a batch ([beginBatch] .. [endBatch]) are sent when the batch commits,
+ * other changes are grouped over a short window.
+ * Each change also invalidates the item in {@link EntityCache}, as it's reported.
+ */
+public class ChangeNotifier {
+
+    private static ContentResolver resolver;
+    private static ScheduledExecutorService scheduler;
+
+    // How long changes outside of a batch wait for more changes
+    private static long windowMillis = 50;
+    private static boolean flushScheduled = false;
+
+    // uri -> combined notify flags
+    private static final Map<Uri, Integer> pending = new LinkedHashMap<>();
+    private static final ThreadLocal<Map<Uri, Integer>> batchChanges = new ThreadLocal<>();
+
+    public static synchronized void init(@NonNull Context context) {
+        if (resolver != null) return;
+        resolver = context.getApplicationContext().getContentResolver();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ChangeNotifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized void setWindow(long millis) {
+        windowMillis = Math.max(0, millis);
+    }
+
+    public static void albumChanged(@NonNull String id, int flag) {
+        itemChanged(PathCode.Album, id, flag);
+    }
+
+    public static void artistChanged(@NonNull String id, int flag) {
+        itemChanged(PathCode.Artist, id, flag);
+    }
+
+    static void itemChanged(@NonNull PathCode path, @NonNull String id, int flag) {
+        // every write reports its items here, so cached copies are dropped right away
+        EntityCache.invalidate(path, id);
+        changed(itemUri(path, id), flag);
+    }
+
+    @NonNull
+    static Uri itemUri(@NonNull PathCode path, @NonNull String id) {
+        return new Uri.Builder()
+            .scheme("content")
+            .authority(Constants.PROVIDER_NAME)
+            .appendPath(path.pathName())
+            .appendQueryParameter("id", id)
+            .build();
+    }
+
+    private static void changed(@NonNull Uri uri, int flag) {
+        Map<Uri, Integer> batch = batchChanges.get();
+        if (batch != null) {
+            merge(batch, uri, flag);
+            return;
+        }
+
+        synchronized (ChangeNotifier.class) {
+            if (resolver == null) return;
+            merge(pending, uri, flag);
+            if (flushScheduled) return;
+            flushScheduled = true;
+            scheduler.schedule(ChangeNotifier::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void merge(Map<Uri, Integer> changes, Uri uri, int flag) {
+        Integer flags = changes.get(uri);
+        changes.put(uri, flags == null ? flag : flags | flag);
+    }
+
+    /**
+     * Holds this thread's changes until [endBatch]
+     *
+     * @return false if a batch was already open; the outer caller ends it
+     */
+    public static boolean beginBatch() {
+        if (batchChanges.get() != null) return false;
+        batchChanges.set(new LinkedHashMap<>());
+        return true;
+    }
+
+    /**
+     * Sends the changes held since [beginBatch], or drops them if the batch was rolled back
+     */
+    public static void endBatch(boolean committed) {
+        Map<Uri, Integer> batch = batchChanges.get();
+        batchChanges.remove();
+        if (batch != null && committed)
+            dispatch(batch);
+    }
+
+    /**
+     * Sends the changes waiting for the window now
+     */
+    public static void flush() {
+        Map<Uri, Integer> changes;
+        synchronized (ChangeNotifier.class) {
+            changes = new LinkedHashMap<>(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+        dispatch(changes);
+    }
+
+    private static void dispatch(@NonNull Map<Uri, Integer> changes) {
+        ContentResolver target;
+        synchronized (ChangeNotifier.class) {
+            target = resolver;
+        }
+        if (target == null || changes.isEmpty()) return;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // one call per combination of flags
+            Map<Integer, List<Uri>> byFlags = new LinkedHashMap<>();
+            for (Map.Entry<Uri, Integer> change : changes.entrySet()) {
+                List<Uri> uris = byFlags.get(change.getValue());
+                if (uris == null) {
+                    uris = new ArrayList<>();
+                    byFlags.put(change.getValue(), uris);
+                }
+                uris.add(change.getKey());
+            }
+            for (Map.Entry<Integer, List<Uri>> group : byFlags.entrySet())
+                target.notifyChange(group.getValue(), null, group.getKey());
+        } else {
+            // the insert/update/delete flags aren't known before R
+            for (Uri uri : changes.keySet())
+                target.notifyChange(uri, null);
+        }
+    }
+}
@@ -2,27 +2,100 @@ package com.lasley.kts_provider.database;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.lasley.kts_provider.Constants;
 import com.lasley.kts_provider.data.Album;
+import com.lasley.kts_provider.data.AlbumSearch;
 import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.data.ArtistSearch;
+import com.lasley.kts_provider.data.ChangeEntry;
 import com.lasley.kts_provider.data.HistoryStamp;
+import com.lasley.kts_provider.data.MetaValue;
 
-@Database(entities = {Artist.class, Album.class, HistoryStamp.class}, version = 1)
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Database(
+    entities = {
+        Artist.class, Album.class, HistoryStamp.class,
+        AlbumSearch.class, ArtistSearch.class,
+        ChangeEntry.class, MetaValue.class
+    },
+    version = 8
+)
 public abstract class ContentDatabase extends RoomDatabase {
     public abstract DataDao dataDao();
 
+    /**
+     * Connections of the WAL reader pool; Room's framework SQLite opens up to this many
+     * (SQLiteGlobal's WAL pool size), so more query threads would only wait on a connection.
+     */
+    public static final int READER_CONNECTIONS = 4;
+
     private static ContentDatabase instance = null;
 
+    private static Executor queryExecutor;
+    private static Executor transactionExecutor;
+
     public static synchronized ContentDatabase getInstance(Context context) {
         if (instance == null)
-            instance = Room
-                .databaseBuilder(context, ContentDatabase.class, Constants.DATABASE_NAME)
-                .allowMainThreadQueries()
-                .build();
+            instance = create(context, Constants.DATABASE_NAME);
         return instance;
     }
+
+    /**
+     * Opens database [name] in WAL mode, so queries run alongside a write transaction.
+     * Queries on the main thread are rejected.
+     */
+    @VisibleForTesting
+    public static ContentDatabase create(Context context, String name) {
+        return Room
+            .databaseBuilder(context, ContentDatabase.class, name)
+            .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+            .setQueryExecutor(queryExecutor())
+            .setTransactionExecutor(transactionExecutor())
+            .addMigrations(DatabaseMigrations.ALL)
+            .addCallback(new RoomDatabase.Callback() {
+                @Override
+                public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                    DatabaseMigrations.createChangeLogTriggers(db);
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Pool for reads, one thread per reader connection
+     */
+    public static synchronized Executor queryExecutor() {
+        if (queryExecutor == null)
+            queryExecutor = Executors.newFixedThreadPool(READER_CONNECTIONS, namedThreads("ContentDatabase-read"));
+        return queryExecutor;
+    }
+
+    /**
+     * Single thread for writes; SQLite allows one writer at a time anyway
+     */
+    public static synchronized Executor transactionExecutor() {
+        if (transactionExecutor == null)
+            transactionExecutor = Executors.newSingleThreadExecutor(namedThreads("ContentDatabase-write"));
+        return transactionExecutor;
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
@@ -1,13 +1,21 @@
 package com.lasley.kts_provider.database;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.lasley.kts_provider.database.DatabaseHistory.HistoryToken;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
 import java.util.Arrays;
 
 public class DataContentProvider extends ContentProvider {
@@ -17,7 +25,9 @@ public class DataContentProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
+        // the database opens off the main thread; process start doesn't wait on it
         databaseHelper = new DatabaseHelper(getContext());
+        databaseHelper.warmUp();
         return true;
     }
 
@@ -38,21 +48,58 @@ public class DataContentProvider extends ContentProvider {
                 ", sortOrder: " + sortOrder
         );
 
-        return databaseHelper.query(uri, projection, selection, selectionArgs, sortOrder);
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Query, path);
+        Cursor cursor = null;
+        try {
+            cursor = databaseHelper.query(uri, projection, selection, selectionArgs, sortOrder);
+            return cursor;
+        } finally {
+            // the binder counts the rows anyway, to send the first window
+            RouteMetrics.end(HistoryToken.Query, path, start, cursor == null ? 0 : cursor.getCount());
+        }
     }
 
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
         System.out.println("getType: " + uri);
+        if (DatabaseHelper.uriMatcher.match(uri) == PathCode.Snapshot.ordinal())
+            return SnapshotWriter.MIME_TYPE;
         return null;
     }
 
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(
+        @NonNull Uri uri,
+        @NonNull String mode
+    ) throws FileNotFoundException {
+        System.out.println("openFile: " + uri + ", mode: " + mode);
+
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Query, path);
+        try {
+            return databaseHelper.openSnapshot(this, uri, mode);
+        } finally {
+            // until the pipe is open; the stream itself is written after this returns
+            RouteMetrics.end(HistoryToken.Query, path, start, 0);
+        }
+    }
+
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
         System.out.println("insert: " + uri + ", values: " + values);
-        return databaseHelper.insert(uri, values);
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Insert, path);
+        Uri inserted = null;
+        try {
+            inserted = databaseHelper.insert(uri, values);
+            return inserted;
+        } finally {
+            RouteMetrics.end(HistoryToken.Insert, path, start, inserted == null ? 0 : 1);
+        }
     }
 
     @Override
@@ -67,7 +114,15 @@ public class DataContentProvider extends ContentProvider {
                 ", selectionArgs: " + Arrays.toString(selectionArgs)
         );
 
-        return databaseHelper.delete(uri, selection, selectionArgs);
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Delete, path);
+        int rows = 0;
+        try {
+            rows = databaseHelper.delete(uri, selection, selectionArgs);
+            return rows;
+        } finally {
+            RouteMetrics.end(HistoryToken.Delete, path, start, rows);
+        }
     }
 
     @Override
@@ -84,7 +139,15 @@ public class DataContentProvider extends ContentProvider {
                 ", selectionArgs: " + Arrays.toString(selectionArgs)
         );
 
-        return databaseHelper.update(uri, values, selection, selectionArgs);
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Update, path);
+        int rows = 0;
+        try {
+            rows = databaseHelper.update(uri, values, selection, selectionArgs);
+            return rows;
+        } finally {
+            RouteMetrics.end(HistoryToken.Update, path, start, rows);
+        }
     }
 
     @Override
@@ -94,6 +157,40 @@ public class DataContentProvider extends ContentProvider {
                 ", values: " + Arrays.toString(values)
         );
 
-        return databaseHelper.bulkInsert(uri, values);
+        PathCode path = DatabaseHelper.pathOf(uri);
+        long start = RouteMetrics.begin(HistoryToken.Insert, path);
+        int rows = 0;
+        try {
+            rows = databaseHelper.bulkInsert(uri, values);
+            return rows;
+        } finally {
+            RouteMetrics.end(HistoryToken.Insert, path, start, rows);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+        @NonNull ArrayList<ContentProviderOperation> operations
+    ) throws OperationApplicationException {
+        System.out.println("applyBatch: " + operations.size() + " operations");
+
+        // changes of the batch are sent together once it commits
+        // timed as a whole, under the bulk path
+        long start = RouteMetrics.begin(HistoryToken.Update, PathCode.Bulk);
+        ContentProviderResult[] results = null;
+        try {
+            results = databaseHelper.applyBatch(operations);
+            return results;
+        } finally {
+            RouteMetrics.end(HistoryToken.Update, PathCode.Bulk, start, results == null ? 0 : results.length);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        // only called by tests; on a device the process is killed without notice
+        DatabaseHistory.shutdown();
+        super.shutdown();
     }
 }
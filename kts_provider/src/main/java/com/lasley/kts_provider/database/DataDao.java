@@ -8,17 +8,28 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
+import androidx.room.Upsert;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import com.lasley.kts_provider.data.Album;
 import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.data.ChangeEntry;
 import com.lasley.kts_provider.data.HistoryStamp;
+import com.lasley.kts_provider.data.MetaValue;
 
 import java.util.List;
 
 @Dao
 public abstract class DataDao {
 
+    /**
+     * Comma-joined IDs of the artist's albums, for the "album_ids" field of {@link Artist}
+     */
+    static final String ARTIST_ALBUM_IDS = "(SELECT IFNULL(group_concat(album_id), '') " +
+        "FROM _album WHERE _album.artist_id = _artist.artist_id) AS album_ids";
+
     @Query("SELECT * FROM _album")
     @Nullable
     public abstract Cursor getAllAlbums();
@@ -26,10 +37,12 @@ public abstract class DataDao {
     @Query("SELECT * FROM _album WHERE album_id = :id")
     public abstract Cursor getAlbum(String id);
 
-    @Query("SELECT * FROM _artist")
+    // Artist rows for clients carry "album_ids", projected from the album -> artist relation.
+
+    @Query("SELECT *, " + ARTIST_ALBUM_IDS + " FROM _artist")
     public abstract Cursor getAllArtists();
 
-    @Query("SELECT * FROM _artist WHERE artist_id = :id")
+    @Query("SELECT *, " + ARTIST_ALBUM_IDS + " FROM _artist WHERE artist_id = :id")
     public abstract Cursor getArtist(String id);
 
 //    @Query(value = """SELECT * FROM domain ORDER BY CASE :order WHEN 1 THEN 'id ASC' ELSE 'id DESC' END""")
@@ -38,6 +51,115 @@ public abstract class DataDao {
     @Query("SELECT * FROM _album WHERE artist_id = :id")
     public abstract Cursor getArtistAlbums(String id);
 
+    /**
+     * Album or artist query shaped by the request, see {@link QueryBuilder}
+     */
+    @RawQuery
+    public abstract Cursor query(SupportSQLiteQuery query);
+
+    // Keyset pages, ordered by (updatedTime, id).
+    // Written as a range on updatedTime so the scan walks the composite index in order.
+
+    @Query("SELECT * FROM _album " +
+        "WHERE updatedTime >= :afterTime AND (updatedTime > :afterTime OR album_id > :afterId) " +
+        "ORDER BY updatedTime, album_id LIMIT :limit")
+    public abstract Cursor getAlbumsPage(long afterTime, String afterId, int limit);
+
+    @Query("SELECT *, " + ARTIST_ALBUM_IDS + " FROM _artist " +
+        "WHERE updatedTime >= :afterTime AND (updatedTime > :afterTime OR artist_id > :afterId) " +
+        "ORDER BY updatedTime, artist_id LIMIT :limit")
+    public abstract Cursor getArtistsPage(long afterTime, String afterId, int limit);
+
+    @Query("SELECT * FROM _album WHERE artist_id = :id " +
+        "AND updatedTime >= :afterTime AND (updatedTime > :afterTime OR album_id > :afterId) " +
+        "ORDER BY updatedTime, album_id LIMIT :limit")
+    public abstract Cursor getArtistAlbumsPage(String id, long afterTime, String afterId, int limit);
+
+    @Query("SELECT album_id FROM _album WHERE artist_id = :id")
+    public abstract List<String> getArtistAlbumIDs(String id);
+
+    /**
+     * Moves an album to [artistId]; the artists' rows are left as they are.
+     */
+    @Query("UPDATE _album SET artist_id = :artistId, updatedTime = :updatedTime WHERE album_id = :albumId")
+    public abstract int moveAlbum(String albumId, String artistId, long updatedTime);
+
+    @Query("DELETE FROM _album WHERE artist_id = :id")
+    public abstract int deleteArtistAlbums(String id);
+
+    @Query("SELECT album_id FROM _album WHERE artist_id IN (:ids)")
+    public abstract List<String> getArtistsAlbumIDs(List<String> ids);
+
+    @Query("DELETE FROM _album WHERE album_id IN (:ids)")
+    public abstract int deleteAlbums(List<String> ids);
+
+    @Query("DELETE FROM _artist WHERE artist_id IN (:ids)")
+    public abstract int deleteArtists(List<String> ids);
+
+    @Query("DELETE FROM _album WHERE artist_id IN (:ids)")
+    public abstract int deleteArtistsAlbums(List<String> ids);
+
+    /**
+     * Deletes every album; unlike clearing the tables, each one is logged as a tombstone
+     */
+    @Query("DELETE FROM _album")
+    public abstract int deleteAllAlbums();
+
+    @Query("DELETE FROM _artist")
+    public abstract int deleteAllArtists();
+
+    @Query("SELECT COUNT(*) FROM _album")
+    public abstract int countAlbums();
+
+    @Query("SELECT COUNT(*) FROM _artist")
+    public abstract int countArtists();
+
+    @Query("SELECT COUNT(*) FROM _album WHERE artist_id = :id")
+    public abstract int countArtistAlbums(String id);
+
+    // Full-text search; [match] is an FTS MATCH expression.
+    // Names starting with [term] rank first, then shorter (closer) names.
+
+    @Query("SELECT _album.* FROM _album JOIN _album_fts ON _album.rowid = _album_fts.docid " +
+        "WHERE _album_fts MATCH :match " +
+        "ORDER BY instr(lower(_album.name), lower(:term)) = 1 DESC, " +
+        "length(_album.name), _album.name LIMIT :limit")
+    public abstract Cursor searchAlbums(String match, String term, int limit);
+
+    @Query("SELECT _artist.*, " + ARTIST_ALBUM_IDS + " FROM _artist JOIN _artist_fts ON _artist.rowid = _artist_fts.docid " +
+        "WHERE _artist_fts MATCH :match " +
+        "ORDER BY instr(lower(_artist.name), lower(:term)) = 1 DESC, " +
+        "length(_artist.name), _artist.name LIMIT :limit")
+    public abstract Cursor searchArtists(String match, String term, int limit);
+
+    // Change log, see ChangeLog
+
+    @Query("SELECT * FROM _changeLog WHERE seq > :since ORDER BY seq LIMIT :limit")
+    public abstract List<ChangeEntry> getChangesSince(long since, int limit);
+
+    @Query("SELECT IFNULL(MAX(seq), 0) FROM _changeLog")
+    public abstract long lastChangeSeq();
+
+    @Query("SELECT MAX(seq) FROM _changeLog WHERE deleted = 1 AND changedTime < :before")
+    @Nullable
+    public abstract Long lastTombstoneBefore(long before);
+
+    @Query("DELETE FROM _changeLog WHERE deleted = 1 AND seq <= :seq")
+    public abstract int deleteTombstones(long seq);
+
+    @Query("SELECT * FROM _album WHERE album_id IN (:ids)")
+    public abstract Cursor getAlbumsByID(List<String> ids);
+
+    @Query("SELECT *, " + ARTIST_ALBUM_IDS + " FROM _artist WHERE artist_id IN (:ids)")
+    public abstract Cursor getArtistsByID(List<String> ids);
+
+    @Query("SELECT value FROM _meta WHERE name = :name")
+    @Nullable
+    public abstract Long getMeta(String name);
+
+    @Upsert
+    public abstract void setMeta(MetaValue value);
+
     @Query("SELECT 1 FROM _artist WHERE artist_id = :id")
     public abstract boolean containsArtist(String id);
 
@@ -50,9 +172,21 @@ public abstract class DataDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     public abstract List<Long> insert(Album... albums);
 
+    // Insert, or update the existing row in place (which keeps its rowid and search entry).
+    // Each result is the new rowid, or -1 where an existing row was updated.
+
+    @Upsert
+    public abstract List<Long> upsertAlbums(List<Album> albums);
+
+    @Upsert
+    public abstract List<Long> upsertArtists(List<Artist> artists);
+
     @Insert
     public abstract long appendHistory(HistoryStamp item);
 
+    @Insert
+    public abstract void appendHistory(List<HistoryStamp> items);
+
     @Update(onConflict = OnConflictStrategy.REPLACE)
     public abstract int update(Album... albums);
 
@@ -0,0 +1,37 @@
+package com.lasley.kts_provider.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter of the item data's version; any change to an album or artist moves it forward.
+ * <p>
+ * It's bumped by {@link EntityCache} for every item change reported to {@link ChangeNotifier},
+ * and again for the items of a transaction once it ends, so a value read before a query
+ * and still current after it means the query's rows are current.
+ * It starts over with each process; {@link #tag} tells the processes apart.
+ */
+class DataGeneration {
+
+    private static final AtomicLong generation = new AtomicLong(0);
+
+    // tells this process's generations from an earlier one's
+    private static final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    static long current() {
+        return generation.get();
+    }
+
+    /**
+     * The current generation as an opaque tag, for clients to send back as "ifNoneMatch"
+     */
+    static String tag() {
+        return epoch + "-" + generation.get();
+    }
+
+    /**
+     * @return The new generation
+     */
+    static long bump() {
+        return generation.incrementAndGet();
+    }
+}
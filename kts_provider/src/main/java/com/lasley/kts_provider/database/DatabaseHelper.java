@@ -1,20 +1,39 @@
 package com.lasley.kts_provider.database;
 
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.lasley.kts_provider.Constants;
 import com.lasley.kts_provider.data.Album;
 import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.data.JsonCodec;
 
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 
@@ -23,12 +42,40 @@ import java.util.regex.Pattern;
  */
 public class DatabaseHelper {
 
-    static ContentDatabase database;
+    private static volatile ContentDatabase database;
+    // for opening the database on first use
+    private static Context appContext;
 
     static final UriMatcher uriMatcher;
 
     private static final Pattern idPattern;
 
+    // separators between the words of a "contains" search
+    private static final Pattern searchSeparator = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Cursor extra: rows available to the request, across all pages */
+    public static final String EXTRA_TOTAL_COUNT = "total_count";
+    /** Cursor extra: "after" token of the next page; missing on the last page */
+    public static final String EXTRA_NEXT_PAGE = "next_after";
+
+    /** Cursor extra (changes): sequence to send as "since" next */
+    public static final String EXTRA_HIGH_WATER = "high_water";
+    /** Cursor extra (changes): more changes after this page */
+    public static final String EXTRA_HAS_MORE = "has_more";
+    /** Cursor extra (changes): "since" is older than the change log; reload everything */
+    public static final String EXTRA_RESYNC = "resync";
+
+    /** Cursor extra: tag of the data the rows were read from; send as "ifNoneMatch" */
+    public static final String EXTRA_TAG = "tag";
+    /** Cursor extra: "ifNoneMatch" is still current; there are no rows */
+    public static final String EXTRA_NOT_MODIFIED = "not_modified";
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    // IDs bound per statement; older SQLite versions allow 999 variables
+    static final int MAX_BOUND_IDS = 900;
+
     static {
         uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
@@ -41,10 +88,13 @@ public class DatabaseHelper {
         idPattern = Pattern.compile("(?:\\w+-){4}\\w+");
     }
 
+    /**
+     * Doesn't open the database; that's left to the first request, or {@link #warmUp}
+     */
     public DatabaseHelper(@Nullable Context context) {
         if (context == null) return;
-        database = ContentDatabase.getInstance(context);
-        DatabaseHistory.init(context);
+        StartupMetrics.providerCreated();
+        appContext = context.getApplicationContext();
     }
 
     @VisibleForTesting
@@ -52,6 +102,70 @@ public class DatabaseHelper {
         DatabaseHelper.database = database;
     }
 
+    /**
+     * The database, opened (with the history and change notifiers) on first use
+     */
+    @NonNull
+    static ContentDatabase database() {
+        ContentDatabase opened = database;
+        if (opened != null) return opened;
+
+        synchronized (DatabaseHelper.class) {
+            if (database == null) {
+                if (appContext == null)
+                    throw new IllegalStateException("DatabaseHelper was created without a context");
+                ContentDatabase created = ContentDatabase.getInstance(appContext);
+                DatabaseHistory.init(appContext);
+                ChangeNotifier.init(appContext);
+                database = created;
+            }
+            return database;
+        }
+    }
+
+    /**
+     * Opens the database on a background thread, before the first request needs it:
+     * runs the migrations, prepares the hot statements, and primes the shared full lists.
+     * Requests which come first open it themselves, and don't wait on the warm-up.
+     */
+    public void warmUp() {
+        ContentDatabase.queryExecutor().execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                DataDao access = database().dataDao();
+                // opening the connection runs any migration
+                database().getOpenHelper().getWritableDatabase();
+
+                // each statement is prepared once, and kept in the connection's statement cache
+                access.getAlbumItem("");
+                access.getArtistItem("");
+                access.lastChangeSeq();
+                access.getAlbumsPage(Long.MIN_VALUE, "", 1).close();
+                access.getArtistsPage(Long.MIN_VALUE, "", 1).close();
+
+                // what every observer asks for first, if it's small enough to be kept
+                if (access.countAlbums() <= SharedQueries.MAX_SHARED_ROWS)
+                    closeQuietly(SharedQueries.query("albums", access::getAllAlbums));
+                if (access.countArtists() <= SharedQueries.MAX_SHARED_ROWS)
+                    closeQuietly(SharedQueries.query("artists", access::getAllArtists));
+
+                StartupMetrics.warmedUp(SystemClock.elapsedRealtime() - start);
+            } catch (RuntimeException e) {
+                // the first request opens the database itself, and reports the failure
+                System.out.println("Provider warm-up failed: " + e);
+            }
+        });
+    }
+
+    @NonNull
+    static PathCode pathOf(@NonNull Uri uri) {
+        return PathCode.parseToCode(uriMatcher.match(uri));
+    }
+
+    private static void closeQuietly(@Nullable Cursor cursor) {
+        if (cursor != null) cursor.close();
+    }
+
     private boolean validateID(@Nullable String id) {
         if (id == null) return false;
         return idPattern.matcher(id).find();
@@ -60,30 +174,117 @@ public class DatabaseHelper {
     private Uri.Builder buildUri(String path) {
         return new Uri.Builder()
             .scheme("content")
-            .authority(Constants.AUTHORITY)
+            .authority(Constants.PROVIDER_NAME)
             .appendPath(path);
     }
 
+    /**
+     * Album from typed columns ("album_id", "name", "artist_id", "createdTime", "updatedTime"),
+     * or from the JSON "content" value when there are none.
+     * <p>
+     * Typed columns which are missing keep their value from [base], or the entity default.
+     *
+     * @param itemID Album ID when "album_id" is missing
+     */
     @Nullable
-    private Album parseToAlbum(@Nullable String content) {
-        if (content == null) return null;
-        try {
-            return new Gson().fromJson(content, Album.class);
-        } catch (Throwable ignored) {
-            return null;
+    private Album readAlbum(
+        @NonNull ContentValues values,
+        @Nullable String itemID,
+        @Nullable Album base
+    ) {
+        if (!hasTypedColumns(values))
+            return parseToAlbum(values.getAsString("content"));
+
+        Album album = new Album();
+        if (base != null) {
+            album.name = base.name;
+            album.artist = base.artist;
+            album.createdTime = base.createdTime;
+            album.updatedTime = base.updatedTime;
+        }
+
+        String uuid = values.containsKey("album_id") ? values.getAsString("album_id") : itemID;
+        if (uuid == null) return null;
+        album.uuid = uuid;
+        if (values.containsKey("name"))
+            album.name = values.getAsString("name");
+        if (values.containsKey("artist_id"))
+            album.artist = values.getAsString("artist_id");
+        Long createdTime = readTime(values, "createdTime", album.createdTime);
+        Long updatedTime = readTime(values, "updatedTime", album.updatedTime);
+        if (createdTime == null || updatedTime == null) return null;
+        album.createdTime = createdTime;
+        album.updatedTime = updatedTime;
+        return album;
+    }
+
+    /**
+     * Artist from typed columns ("artist_id", "name", "createdTime", "updatedTime"),
+     * or from the JSON "content" value when there are none. See [readAlbum]
+     */
+    @Nullable
+    private Artist readArtist(
+        @NonNull ContentValues values,
+        @Nullable String itemID,
+        @Nullable Artist base
+    ) {
+        if (!hasTypedColumns(values))
+            return parseToArtist(values.getAsString("content"));
+
+        Artist artist = new Artist();
+        if (base != null) {
+            artist.name = base.name;
+            artist.createdTime = base.createdTime;
+            artist.updatedTime = base.updatedTime;
         }
+
+        String uuid = values.containsKey("artist_id") ? values.getAsString("artist_id") : itemID;
+        if (uuid == null) return null;
+        artist.uuid = uuid;
+        if (values.containsKey("name"))
+            artist.name = values.getAsString("name");
+        Long createdTime = readTime(values, "createdTime", artist.createdTime);
+        Long updatedTime = readTime(values, "updatedTime", artist.updatedTime);
+        if (createdTime == null || updatedTime == null) return null;
+        artist.createdTime = createdTime;
+        artist.updatedTime = updatedTime;
+        return artist;
+    }
+
+    /**
+     * @return the [column] time of [values], [fallback] when it's missing, or null if it isn't a number
+     */
+    @Nullable
+    private static Long readTime(@NonNull ContentValues values, @NonNull String column, long fallback) {
+        if (!values.containsKey(column)) return fallback;
+        return values.getAsLong(column);
+    }
+
+    /**
+     * True if [values] holds the item as columns, instead of JSON "content"
+     */
+    private static boolean hasTypedColumns(@NonNull ContentValues values) {
+        // any column set without "content" is a typed write, e.g. only "artist_id" to move an album
+        return !values.containsKey("content");
+    }
+
+    @Nullable
+    private Album parseToAlbum(@Nullable String content) {
+        return JsonCodec.fromJson(content, Album.class);
     }
 
     @Nullable
     private Artist parseToArtist(@Nullable String content) {
-        if (content == null) return null;
-        try {
-            return new Gson().fromJson(content, Artist.class);
-        } catch (Throwable ignored) {
-            return null;
-        }
+        return JsonCodec.fromJson(content, Artist.class);
     }
 
+    /**
+     * Rows of the [uri] route; every cursor carries the data's tag ({@link #EXTRA_TAG}).
+     * <p>
+     * With "ifNoneMatch=<tag>" and no change since that tag, the cursor is empty
+     * and marked {@link #EXTRA_NOT_MODIFIED}, without reading anything.
+     * The tag covers every album and artist, not only the route's rows.
+     */
     @Nullable
     public Cursor query(
         @NonNull Uri uri,
@@ -92,8 +293,40 @@ public class DatabaseHelper {
         @Nullable String[] selectionArgs,
         @Nullable String sortOrder
     ) {
-        DataDao access = database.dataDao();
-//        String queryCheck = uri.getQueryParameter("contains");
+        // read before the query; a change while it runs leaves the rows with an older tag
+        String tag = DataGeneration.tag();
+        if (tag.equals(uri.getQueryParameter("ifNoneMatch"))) {
+            PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
+            DatabaseHistory.query(path, HistoryActionToken.OK, "not modified");
+            MatrixCursor cursor = new MatrixCursor(new String[0], 0);
+            Bundle extras = new Bundle();
+            extras.putString(EXTRA_TAG, tag);
+            extras.putBoolean(EXTRA_NOT_MODIFIED, true);
+            cursor.setExtras(extras);
+            return cursor;
+        }
+
+        Cursor cursor = queryRoute(uri, projection, selection, selectionArgs, sortOrder);
+        StartupMetrics.queryFinished();
+        if (cursor == null) return null;
+
+        Bundle extras = new Bundle(cursor.getExtras());
+        extras.putString(EXTRA_TAG, tag);
+        cursor.setExtras(extras);
+        return cursor;
+    }
+
+    @Nullable
+    private Cursor queryRoute(
+        @NonNull Uri uri,
+        @Nullable String[] projection,
+        @Nullable String selection,
+        @Nullable String[] selectionArgs,
+        @Nullable String sortOrder
+    ) {
+        DataDao access = database().dataDao();
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
+        String contains = uri.getQueryParameter("contains");
         String itemID = uri.getQueryParameter("id");
         HistoryActionToken idCheck;
         if (validateID(itemID))
@@ -105,103 +338,375 @@ public class DatabaseHelper {
             content://com.lasley.provider/album?artist=1234
 
             albums -> all albums
-            albums?contains=abc -> albums (names containing "abc)
+            albums?contains=abc -> albums (names with a word starting with "abc")
+            albums?contains=abc&limit=20 -> best 20 matches
             album/1234 -> single album
 
             artists -> all artists
-            artists?contains=abc -> albums (names containing "abc)
+            artists?contains=abc -> artists (names with a word starting with "abc")
             artist/1234 -> single artist "1234"
             artist/albums/1234 -> albums from artist "1234"
+
+            albums, projection [album_id, name], selection "name PREFIX ?" ["Dark"], sortOrder "name"
+                -> id and name of the albums starting with "Dark" (case-sensitive), by name
+
+            albums?limit=100 -> first 100 albums, by (updatedTime, album_id)
+            albums?limit=100&after=<token> -> next 100 albums after the token's position
+
+            changes?since=0 -> every item's latest change, then "high_water" to send as the next since
+            changes?since=120&limit=500 -> next 500 changes after 120, deletes included
+
+            snapshot -> (openFile) every artist and album as one stream, see SnapshotWriter
+
+            status -> request counts, errors, latency and rows per (action, path), see RouteMetrics
+
+            albums?ifNoneMatch=<tag> -> empty "not_modified" cursor if nothing changed since the tag
          */
 
-        switch (PathCode.parseToCode(uriMatcher.match(uri))) {
+        boolean paged = uri.getQueryParameter("limit") != null
+            || uri.getQueryParameter("after") != null;
+        // columns, filter or order were requested, see QueryBuilder
+        boolean shaped = projection != null || selection != null || sortOrder != null;
+
+        switch (path) {
             case Albums: {
-                DatabaseHistory.query(HistoryActionToken.OK, "AllAlbums");
-                return access.getAllAlbums();
+                if (contains != null) return querySearch(path, uri, contains);
+                if (paged) return queryPage(path, uri, null);
+                if (shaped)
+                    return queryShaped(path, new QueryBuilder(QueryBuilder.Table.Albums),
+                        projection, selection, selectionArgs, sortOrder);
+                DatabaseHistory.query(path, HistoryActionToken.OK, "AllAlbums");
+                // observers all re-query after a change; they share one read
+                return SharedQueries.query("albums", access::getAllAlbums);
             }
 
             case Album: {
                 if (itemID == null) {
-                    DatabaseHistory.query(HistoryActionToken.Missing_ID, "album");
+                    if (contains != null) return querySearch(path, uri, contains);
+                    DatabaseHistory.query(path, HistoryActionToken.Missing_ID, "album");
                     return null;
                 }
-                DatabaseHistory.query(idCheck, "album");
+                if (shaped)
+                    return queryShaped(path, new QueryBuilder(QueryBuilder.Table.Albums)
+                        .where("album_id", itemID), projection, selection, selectionArgs, sortOrder);
+                DatabaseHistory.query(path, idCheck, "album");
                 return access.getAlbum(itemID);
             }
 
             case Artists: {
-                DatabaseHistory.query(HistoryActionToken.OK, "AllArtists");
-                return access.getAllArtists();
+                if (contains != null) return querySearch(path, uri, contains);
+                if (paged) return queryPage(path, uri, null);
+                if (shaped)
+                    return queryShaped(path, new QueryBuilder(QueryBuilder.Table.Artists),
+                        projection, selection, selectionArgs, sortOrder);
+                DatabaseHistory.query(path, HistoryActionToken.OK, "AllArtists");
+                return SharedQueries.query("artists", access::getAllArtists);
             }
 
             case Artist: {
                 if (itemID == null) {
-                    DatabaseHistory.query(HistoryActionToken.Missing_ID, "artist");
+                    if (contains != null) return querySearch(path, uri, contains);
+                    DatabaseHistory.query(path, HistoryActionToken.Missing_ID, "artist");
                     return null;
                 }
-                DatabaseHistory.query(idCheck, "artist");
+                if (shaped)
+                    return queryShaped(path, new QueryBuilder(QueryBuilder.Table.Artists)
+                        .where("artist_id", itemID), projection, selection, selectionArgs, sortOrder);
+                DatabaseHistory.query(path, idCheck, "artist");
                 return access.getArtist(itemID);
             }
 
             case Artist_albums: {
-                if (itemID == null) return null;
+                if (itemID == null) {
+                    DatabaseHistory.query(path, HistoryActionToken.Missing_ID, "artist/albums");
+                    return null;
+                }
+                if (paged) return queryPage(path, uri, itemID);
+                if (shaped)
+                    return queryShaped(path, new QueryBuilder(QueryBuilder.Table.Albums)
+                        .where("artist_id", itemID), projection, selection, selectionArgs, sortOrder);
+                DatabaseHistory.query(path, idCheck, "artist/albums");
                 return access.getArtistAlbums(itemID);
             }
 
+            case Status: {
+                DatabaseHistory.query(path, HistoryActionToken.OK, "status");
+                return RouteMetrics.toCursor();
+            }
+
+            case Changes: {
+                long since = 0;
+                int limit = MAX_PAGE_SIZE;
+                try {
+                    String sinceParam = uri.getQueryParameter("since");
+                    if (sinceParam != null) since = Long.parseLong(sinceParam);
+                    String limitParam = uri.getQueryParameter("limit");
+                    if (limitParam != null)
+                        limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+                } catch (NumberFormatException ignored) {
+                    DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, "changes");
+                    return null;
+                }
+
+                DatabaseHistory.query(path, HistoryActionToken.OK, "changes");
+                return ChangeLog.changesSince(database(), since, limit);
+            }
+
+            default:
+                DatabaseHistory.query(path, HistoryActionToken.Unknown_URI);
+                return null;
+        }
+    }
+
+    /**
+     * Query with the request's own columns, filter and order, on top of [builder]'s route conditions
+     *
+     * @return null if the request used an unknown column, or a filter or sort which isn't supported
+     */
+    @Nullable
+    private Cursor queryShaped(
+        @NonNull PathCode path,
+        @NonNull QueryBuilder builder,
+        @Nullable String[] projection,
+        @Nullable String selection,
+        @Nullable String[] selectionArgs,
+        @Nullable String sortOrder
+    ) {
+        SupportSQLiteQuery query;
+        try {
+            query = builder
+                .project(projection)
+                .select(selection, selectionArgs)
+                .orderBy(sortOrder)
+                .build();
+        } catch (IllegalArgumentException e) {
+            DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, e.getMessage());
+            return null;
+        }
+
+        DatabaseHistory.query(path, HistoryActionToken.OK, "shaped");
+        return database().dataDao().query(query);
+    }
+
+    /**
+     * Name search of the album or artist routes, through the full-text tables.
+     * <p>
+     * Each word of [contains] matches as a prefix, and all the words must match;
+     * "dark si" finds "The Dark Side of the Moon".
+     * Query parameters:
+     * - limit: most rows to return, {@link #DEFAULT_PAGE_SIZE} when missing, up to {@link #MAX_PAGE_SIZE}
+     */
+    @Nullable
+    private Cursor querySearch(
+        @NonNull PathCode path,
+        @NonNull Uri uri,
+        @NonNull String contains
+    ) {
+        String match = toMatchExpression(contains);
+        if (match == null) {
+            DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, "contains");
+            return null;
+        }
+
+        int limit = DEFAULT_PAGE_SIZE;
+        String limitParam = uri.getQueryParameter("limit");
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException ignored) {
+                DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, "limit");
+                return null;
+            }
+        }
+
+        DataDao access = database().dataDao();
+        String term = contains.trim();
+        switch (path) {
+            case Albums:
+            case Album:
+                DatabaseHistory.query(path, HistoryActionToken.OK, "search");
+                return access.searchAlbums(match, term, limit);
+            case Artists:
+            case Artist:
+                DatabaseHistory.query(path, HistoryActionToken.OK, "search");
+                return access.searchArtists(match, term, limit);
             default:
-                DatabaseHistory.query(HistoryActionToken.Unknown_URI);
+                DatabaseHistory.query(path, HistoryActionToken.Unknown_URI, "search");
                 return null;
         }
     }
 
+    /**
+     * Converts user text to an FTS MATCH expression of prefix terms ("dark si" -> "dark* si*").
+     * Only letters and digits are kept, so the text can't inject FTS operators.
+     *
+     * @return null if [contains] has no searchable words
+     */
+    @Nullable
+    @VisibleForTesting
+    static String toMatchExpression(@NonNull String contains) {
+        StringBuilder match = new StringBuilder();
+        for (String word : searchSeparator.split(contains)) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * Keyset page of a list route.
+     * <p>
+     * Query parameters:
+     * - limit: rows per page, {@link #DEFAULT_PAGE_SIZE} when missing, up to {@link #MAX_PAGE_SIZE}
+     * - after: {@link #EXTRA_NEXT_PAGE} token of the previous page, or missing for the first page
+     *
+     * @param artistID Artist of the [PathCode.Artist_albums] route
+     */
+    @Nullable
+    private Cursor queryPage(
+        @NonNull PathCode path,
+        @NonNull Uri uri,
+        @Nullable String artistID
+    ) {
+        DataDao access = database().dataDao();
+
+        int limit = DEFAULT_PAGE_SIZE;
+        String limitParam = uri.getQueryParameter("limit");
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException ignored) {
+                DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, "limit");
+                return null;
+            }
+        }
+
+        PageToken after = PageToken.START;
+        String afterParam = uri.getQueryParameter("after");
+        if (afterParam != null && !afterParam.isEmpty()) {
+            after = PageToken.parse(afterParam);
+            if (after == null) {
+                DatabaseHistory.query(path, HistoryActionToken.Parse_Failed, "after");
+                return null;
+            }
+        }
+
+        Cursor page;
+        int total;
+        String idColumn;
+        switch (path) {
+            case Albums:
+                page = access.getAlbumsPage(after.updatedTime, after.id, limit);
+                total = access.countAlbums();
+                idColumn = "album_id";
+                break;
+            case Artists:
+                page = access.getArtistsPage(after.updatedTime, after.id, limit);
+                total = access.countArtists();
+                idColumn = "artist_id";
+                break;
+            case Artist_albums:
+                page = access.getArtistAlbumsPage(artistID, after.updatedTime, after.id, limit);
+                total = access.countArtistAlbums(artistID);
+                idColumn = "album_id";
+                break;
+            default:
+                DatabaseHistory.query(path, HistoryActionToken.Unknown_URI, "page");
+                return null;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putInt(EXTRA_TOTAL_COUNT, total);
+        // a short page is the last page
+        if (page.getCount() == limit) {
+            PageToken next = PageToken.lastRowOf(page, idColumn);
+            if (next != null)
+                extras.putString(EXTRA_NEXT_PAGE, next.encode());
+        }
+        page.setExtras(extras);
+
+        DatabaseHistory.query(path, HistoryActionToken.OK, "page");
+        return page;
+    }
+
+    /**
+     * Read side of a pipe which streams the whole catalog, see {@link SnapshotWriter}.
+     * <p>
+     * snapshot -> header, every artist, every album, then the end record
+     *
+     * @throws FileNotFoundException if [uri] isn't the snapshot route, or [mode] isn't "r"
+     */
+    @NonNull
+    public ParcelFileDescriptor openSnapshot(
+        @NonNull ContentProvider provider,
+        @NonNull Uri uri,
+        @NonNull String mode
+    ) throws FileNotFoundException {
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
+        if (path != PathCode.Snapshot) {
+            DatabaseHistory.query(path, HistoryActionToken.Unknown_URI, "openFile");
+            throw new FileNotFoundException("No stream for " + uri);
+        }
+        if (!"r".equals(mode)) {
+            DatabaseHistory.query(path, HistoryActionToken.Failed, "snapshot mode: " + mode);
+            throw new FileNotFoundException("Snapshot is read-only");
+        }
+
+        DatabaseHistory.query(path, HistoryActionToken.OK, "snapshot");
+        // the writer runs on a background thread, and stops if the reader closes early
+        return provider.openPipeHelper(uri, SnapshotWriter.MIME_TYPE, null, database(), new SnapshotWriter());
+    }
+
     public Uri insert(
         @NonNull Uri uri,
         @Nullable ContentValues values
     ) {
-        DataDao access = database.dataDao();
+        DataDao access = database().dataDao();
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
         String itemID = uri.getQueryParameter("id");
         if (itemID == null) {
-            DatabaseHistory.insert(HistoryActionToken.Missing_ID, "");
+            DatabaseHistory.insert(path, HistoryActionToken.Missing_ID, "");
             return null;
         }
         if (!validateID(itemID)) {
-            DatabaseHistory.insert(HistoryActionToken.Unknown_ID, itemID);
+            DatabaseHistory.insert(path, HistoryActionToken.Unknown_ID, itemID);
             return null;
         }
         if (values == null) {
-            DatabaseHistory.insert(HistoryActionToken.Missing_Content, "");
+            DatabaseHistory.insert(path, HistoryActionToken.Missing_Content, "");
             return null;
         }
 
-        String content = values.getAsString("content");
-
-        switch (PathCode.parseToCode(uriMatcher.match(uri))) {
+        switch (path) {
             case Album: {
-                Album parsed = parseToAlbum(content);
+                Album parsed = readAlbum(values, itemID, null);
                 if (parsed == null) {
-                    DatabaseHistory.insert(HistoryActionToken.Parse_Failed, itemID);
+                    DatabaseHistory.insert(path, HistoryActionToken.Parse_Failed, itemID);
                     return null;
                 }
 
-                access.insert(parsed);
+                List<Long> rowIDs = access.upsertAlbums(Collections.singletonList(parsed));
+                recordUpsert(path, PathCode.Album, parsed.uuid, rowIDs.get(0));
                 return buildUri("album")
                     .appendQueryParameter("id", parsed.uuid).build();
             }
 
             case Artist: {
-                Artist parsed = parseToArtist(content);
+                Artist parsed = readArtist(values, itemID, null);
                 if (parsed == null) {
-                    DatabaseHistory.insert(HistoryActionToken.Parse_Failed, itemID);
+                    DatabaseHistory.insert(path, HistoryActionToken.Parse_Failed, itemID);
                     return null;
                 }
 
-                access.insert(parsed);
+                List<Long> rowIDs = access.upsertArtists(Collections.singletonList(parsed));
+                recordUpsert(path, PathCode.Artist, parsed.uuid, rowIDs.get(0));
                 return buildUri("artist")
                     .appendQueryParameter("id", parsed.uuid).build();
             }
 
             default:
-                DatabaseHistory.insert(HistoryActionToken.Unknown_URI, itemID);
+                DatabaseHistory.insert(path, HistoryActionToken.Unknown_URI, itemID);
                 return null;
         }
     }
@@ -211,199 +716,471 @@ public class DatabaseHelper {
         @Nullable String selection,
         @Nullable String[] selectionArgs
     ) {
-        DataDao access = database.dataDao();
+        DataDao access = database().dataDao();
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
+        // albums?id=1234&id=5678 -> albums "1234" and "5678"
+        if (path == PathCode.Albums || path == PathCode.Artists)
+            return deleteItems(path, uri.getQueryParameters("id"));
+
         String itemID = uri.getQueryParameter("id");
         if (itemID == null) {
-            DatabaseHistory.delete(HistoryActionToken.Missing_ID, "");
+            DatabaseHistory.delete(path, HistoryActionToken.Missing_ID, "");
             return 0;
         }
         if (!validateID(itemID)) {
-            DatabaseHistory.delete(HistoryActionToken.Unknown_ID, itemID);
+            DatabaseHistory.delete(path, HistoryActionToken.Unknown_ID, itemID);
             return 0;
         }
 
-        switch (PathCode.parseToCode(uriMatcher.match(uri))) {
+        switch (path) {
             case Album: {
-                Album album = access.getAlbumItem(itemID);
+                Album album = EntityCache.album(access, itemID);
                 if (album == null) {
-                    DatabaseHistory.delete(HistoryActionToken.Item_Missing, itemID);
+                    DatabaseHistory.delete(path, HistoryActionToken.Item_Missing, itemID);
                     return 0;
                 }
+                // the artist's album list follows from the album rows, so only the album changes
                 int rows = access.delete(album);
                 if (rows == 0)
-                    DatabaseHistory.delete(HistoryActionToken.Failed, itemID);
+                    DatabaseHistory.delete(path, HistoryActionToken.Failed, itemID);
                 else {
-                    DatabaseHistory.delete(HistoryActionToken.OK, itemID);
-
-                    // Remove album from the artist
-                    Artist artist = access.getArtistItem(album.artist);
-                    if (artist.removeAlbum(itemID)) {
-                        access.update(artist);
-                        DatabaseHistory.update(HistoryActionToken.OK, artist.uuid);
-                    } else
-                        DatabaseHistory.update(HistoryActionToken.Failed, artist.uuid);
+                    DatabaseHistory.delete(path, HistoryActionToken.OK, itemID);
+                    ChangeNotifier.itemChanged(PathCode.Album, itemID, ContentResolver.NOTIFY_DELETE);
                 }
 
                 return rows;
             }
 
             case Artist: {
-                Artist artist = access.getArtistItem(itemID);
+                Artist artist = EntityCache.artist(access, itemID);
                 if (artist == null) {
-                    DatabaseHistory.delete(HistoryActionToken.Item_Missing, itemID);
+                    DatabaseHistory.delete(path, HistoryActionToken.Item_Missing, itemID);
                     return 0;
                 }
 
-                int deleteCount = access.delete(artist);
-
                 // remove the artist -> remove all the albums linked to the artist
-                for (String albumID : artist.albumIDs()) {
-                    Album album = access.getAlbumItem(albumID);
-                    if (album == null)
-                        DatabaseHistory.delete(HistoryActionToken.Failed, itemID);
-                    else {
-                        DatabaseHistory.delete(HistoryActionToken.OK, itemID);
-                        deleteCount += access.delete();
+                return runInTransaction(() -> {
+                    int deleteCount = access.delete(artist);
+                    List<String> albumIDs = access.getArtistAlbumIDs(itemID);
+                    deleteCount += access.deleteArtistAlbums(itemID);
+                    for (String albumID : albumIDs) {
+                        DatabaseHistory.delete(path, HistoryActionToken.OK, albumID);
+                        ChangeNotifier.itemChanged(PathCode.Album, albumID, ContentResolver.NOTIFY_DELETE);
                     }
-                }
-
-                if (deleteCount == 0)
-                    DatabaseHistory.delete(HistoryActionToken.Failed, itemID);
-                else
-                    DatabaseHistory.delete(HistoryActionToken.OK, itemID);
 
-                return deleteCount;
+                    if (deleteCount == 0)
+                        DatabaseHistory.delete(path, HistoryActionToken.Failed, itemID);
+                    else {
+                        DatabaseHistory.delete(path, HistoryActionToken.OK, itemID);
+                        ChangeNotifier.itemChanged(PathCode.Artist, itemID, ContentResolver.NOTIFY_DELETE);
+                    }
+                    return deleteCount;
+                });
             }
 
             default:
-                DatabaseHistory.delete(HistoryActionToken.Unknown_URI, itemID);
+                DatabaseHistory.delete(path, HistoryActionToken.Unknown_URI, itemID);
                 return 0;
         }
     }
 
+    /**
+     * Deletes every item of [itemIDs] in one transaction; artists take their albums with them.
+     * IDs which aren't valid are skipped.
+     *
+     * @return Rows deleted
+     */
+    private int deleteItems(
+        @NonNull PathCode path,
+        @NonNull List<String> itemIDs
+    ) {
+        List<String> valid = new ArrayList<>(itemIDs.size());
+        for (String id : itemIDs) {
+            if (validateID(id))
+                valid.add(id);
+            else
+                DatabaseHistory.delete(path, HistoryActionToken.Unknown_ID, id);
+        }
+        if (valid.isEmpty()) {
+            if (itemIDs.isEmpty())
+                DatabaseHistory.delete(path, HistoryActionToken.Missing_ID, "");
+            return 0;
+        }
+
+        return runInTransaction(() -> {
+            DataDao access = database().dataDao();
+            PathCode itemPath = path == PathCode.Albums ? PathCode.Album : PathCode.Artist;
+            int rows = 0;
+            for (int start = 0; start < valid.size(); start += MAX_BOUND_IDS) {
+                List<String> chunk = valid.subList(start, Math.min(valid.size(), start + MAX_BOUND_IDS));
+                if (path == PathCode.Albums)
+                    rows += access.deleteAlbums(chunk);
+                else {
+                    for (String albumID : access.getArtistsAlbumIDs(chunk))
+                        ChangeNotifier.itemChanged(PathCode.Album, albumID, ContentResolver.NOTIFY_DELETE);
+                    rows += access.deleteArtists(chunk) + access.deleteArtistsAlbums(chunk);
+                }
+            }
+
+            for (String id : valid) {
+                DatabaseHistory.delete(path, HistoryActionToken.OK, id);
+                ChangeNotifier.itemChanged(itemPath, id, ContentResolver.NOTIFY_DELETE);
+            }
+            return rows;
+        });
+    }
+
     public int update(
         @NonNull Uri uri,
         @Nullable ContentValues values,
         @Nullable String selection,
         @Nullable String[] selectionArgs
     ) {
-        DataDao access = database.dataDao();
+        DataDao access = database().dataDao();
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
         String itemID = uri.getQueryParameter("id");
         if (!validateID(itemID)) {
             if (itemID == null)
-                DatabaseHistory.update(HistoryActionToken.Missing_ID, "");
+                DatabaseHistory.update(path, HistoryActionToken.Missing_ID, "");
             else
-                DatabaseHistory.update(HistoryActionToken.Unknown_ID, itemID);
+                DatabaseHistory.update(path, HistoryActionToken.Unknown_ID, itemID);
             return 0;
         }
 
         if (values == null) {
-            DatabaseHistory.update(HistoryActionToken.Missing_Content, itemID);
+            DatabaseHistory.update(path, HistoryActionToken.Missing_Content, itemID);
             return 0;
         }
 
-        String content = values.getAsString("content");
-        if (content == null) {
-            DatabaseHistory.update(HistoryActionToken.Parse_Failed, itemID);
-            return 0;
-        }
-
-        switch (PathCode.parseToCode(uriMatcher.match(uri))) {
+        // typed columns update only the columns given
+        switch (path) {
             case Album: {
-                Album parsed = parseToAlbum(content);
+                Album parsed = readAlbum(values, itemID, EntityCache.album(access, itemID));
                 if (parsed == null) {
-                    DatabaseHistory.update(HistoryActionToken.Parse_Failed, itemID);
+                    DatabaseHistory.update(path, HistoryActionToken.Parse_Failed, itemID);
                     return 0;
                 }
                 int rows = access.update(parsed);
                 if (rows == 0)
-                    DatabaseHistory.update(HistoryActionToken.Failed, itemID);
-                else
-                    DatabaseHistory.update(HistoryActionToken.OK, itemID);
+                    DatabaseHistory.update(path, HistoryActionToken.Failed, itemID);
+                else {
+                    DatabaseHistory.update(path, HistoryActionToken.OK, itemID);
+                    ChangeNotifier.itemChanged(PathCode.Album, parsed.uuid, ContentResolver.NOTIFY_UPDATE);
+                }
                 return rows;
             }
 
             case Artist: {
-                Artist parsed = parseToArtist(content);
+                Artist parsed = readArtist(values, itemID, EntityCache.artist(access, itemID));
                 if (parsed == null) {
-                    DatabaseHistory.update(HistoryActionToken.Parse_Failed, itemID);
+                    DatabaseHistory.update(path, HistoryActionToken.Parse_Failed, itemID);
                     return 0;
                 }
 
                 int rows = access.update(parsed);
                 if (rows == 0)
-                    DatabaseHistory.update(HistoryActionToken.Failed, itemID);
-                else
-                    DatabaseHistory.update(HistoryActionToken.OK, itemID);
+                    DatabaseHistory.update(path, HistoryActionToken.Failed, itemID);
+                else {
+                    DatabaseHistory.update(path, HistoryActionToken.OK, itemID);
+                    ChangeNotifier.itemChanged(PathCode.Artist, parsed.uuid, ContentResolver.NOTIFY_UPDATE);
+                }
                 return rows;
             }
 
             default:
-                DatabaseHistory.update(HistoryActionToken.Unknown_URI, itemID, uri.toString());
+                DatabaseHistory.update(path, HistoryActionToken.Unknown_URI, itemID, uri.toString());
                 return 0;
         }
     }
 
+    /**
+     * Writes every item in one transaction.
+     * Albums and artists are each upserted as one set, and the batch's history is
+     * committed along with them.
+     *
+     * @return Items inserted or updated; items which failed to parse, or have an unknown type,
+     * aren't counted
+     */
     public int bulkInsert(
         @NonNull Uri uri,
         @NonNull ContentValues[] values
     ) {
-        DataDao access = database.dataDao();
-        int updatedItems = 0;
-        DatabaseHistory.insert(HistoryActionToken.OK, "", "Bulk insert: " + values.length);
+        PathCode path = PathCode.parseToCode(uriMatcher.match(uri));
 
+        try {
+            return runInTransaction(() -> {
+                DatabaseHistory.insert(path, HistoryActionToken.OK, "", "Bulk insert: " + values.length);
+                return upsertItems(path, values);
+            });
+        } catch (RuntimeException e) {
+            // rolled back, along with the batch's history
+            DatabaseHistory.insert(path, HistoryActionToken.Failed, "", "Bulk insert: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Applies [operations] as one transaction; a failed operation rolls back the whole batch.
+     * <p>
+     * Operations use the routes of {@link #insert}, {@link #update} and {@link #delete}.
+     * A value back-reference resolves to the ID of the item written by that earlier operation:
+     * - "id": replaces the item ID of the operation's uri
+     * - any other key: is set as that column, or in the "content" JSON, e.g. the "artist_id" of a new album
+     * Assert operations are not supported.
+     */
+    @NonNull
+    public ContentProviderResult[] applyBatch(
+        @NonNull List<ContentProviderOperation> operations
+    ) throws OperationApplicationException {
+        try {
+            return runInTransaction(() -> applyOperations(operations));
+        } catch (Exception e) {
+            // rolled back, along with the batch's history
+            DatabaseHistory.update(PathCode.Bulk, HistoryActionToken.Failed, "", "Batch: " + e);
+            if (e instanceof OperationApplicationException)
+                throw (OperationApplicationException) e;
+            throw new OperationApplicationException(e.toString(), e);
+        }
+    }
+
+    @NonNull
+    private ContentProviderResult[] applyOperations(
+        @NonNull List<ContentProviderOperation> operations
+    ) throws OperationApplicationException {
+        int size = operations.size();
+        ContentProviderResult[] results = new ContentProviderResult[size];
+        // back-references first resolve to the operation's index, then to its item ID
+        ContentProviderResult[] indexes = new ContentProviderResult[size];
+        // the same, shifted by [size]; see [backReferenceKeys]
+        ContentProviderResult[] shifted = new ContentProviderResult[size];
+        String[] itemIDs = new String[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = new ContentProviderResult(i);
+            shifted[i] = new ContentProviderResult(i + size);
+        }
+
+        for (int i = 0; i < size; i++) {
+            ContentProviderOperation operation = operations.get(i);
+            Uri uri = operation.getUri();
+            ContentValues values = operation.resolveValueBackReferences(indexes, i);
+            if (values != null) {
+                Set<String> references = backReferenceKeys(operation, values, shifted, i);
+                // the resolved values may be the operation's own
+                values = new ContentValues(values);
+                uri = resolveItemReferences(uri, values, references, itemIDs, i);
+            }
+
+            if (operation.isInsert()) {
+                Uri inserted = insert(uri, values);
+                if (inserted == null)
+                    throw new OperationApplicationException("Operation " + i + ": insert failed, " + uri);
+                results[i] = new ContentProviderResult(inserted);
+                itemIDs[i] = inserted.getQueryParameter("id");
+            } else if (operation.isUpdate()) {
+                int rows = update(uri, values, null, null);
+                if (rows == 0)
+                    throw new OperationApplicationException("Operation " + i + ": update failed, " + uri);
+                results[i] = new ContentProviderResult(rows);
+                itemIDs[i] = uri.getQueryParameter("id");
+            } else if (operation.isDelete()) {
+                results[i] = new ContentProviderResult(delete(uri, null, null));
+                itemIDs[i] = uri.getQueryParameter("id");
+            } else
+                throw new OperationApplicationException("Operation " + i + ": not supported, " + operation);
+        }
+
+        return results;
+    }
+
+    /**
+     * Keys of [resolved] which came from a value back-reference.
+     * <p>
+     * The operation only resolves its references, so it's resolved again against [shifted]
+     * (every index moved by the batch size); a key whose value moved with it is a reference.
+     * Typed values, such as a "createdTime", stay put.
+     */
+    @NonNull
+    private static Set<String> backReferenceKeys(
+        @NonNull ContentProviderOperation operation,
+        @NonNull ContentValues resolved,
+        @NonNull ContentProviderResult[] shifted,
+        int index
+    ) {
+        ContentValues moved = operation.resolveValueBackReferences(shifted, index);
+        if (moved == null || moved == resolved) return Collections.emptySet();
+
+        Set<String> keys = new HashSet<>();
+        for (String key : resolved.keySet()) {
+            Object value = resolved.get(key);
+            if (value instanceof Number && !value.equals(moved.get(key)))
+                keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Replaces the back-referenced values ([references], resolved to operation indexes) of
+     * [values] with the ID of the item that operation wrote.
+     *
+     * @return [uri], with the referenced item ID if "id" was a back-reference
+     */
+    @NonNull
+    private Uri resolveItemReferences(
+        @NonNull Uri uri,
+        @NonNull ContentValues values,
+        @NonNull Set<String> references,
+        @NonNull String[] itemIDs,
+        int index
+    ) throws OperationApplicationException {
+        JsonObject content = null;
+
+        for (String key : references) {
+            int reference = ((Number) values.get(key)).intValue();
+            String itemID = itemIDs[reference];
+            if (itemID == null)
+                throw new OperationApplicationException(
+                    "Operation " + index + ": operation " + reference + " has no item ID");
+            values.remove(key);
+
+            if (key.equals("id")) {
+                uri = uri.buildUpon().clearQuery()
+                    .appendQueryParameter("id", itemID).build();
+                continue;
+            }
+            if (!values.containsKey("content")) {
+                // typed columns
+                values.put(key, itemID);
+                continue;
+            }
+
+            if (content == null) {
+                try {
+                    content = JsonParser.parseString(values.getAsString("content")).getAsJsonObject();
+                } catch (RuntimeException e) {
+                    throw new OperationApplicationException(
+                        "Operation " + index + ": content can't take \"" + key + "\"", e);
+                }
+            }
+            content.addProperty(key, itemID);
+        }
+
+        if (content != null)
+            values.put("content", content.toString());
+        return uri;
+    }
+
+    /**
+     * Runs [body] as one database transaction, writing the history it records in the same
+     * transaction. Its change notifications are sent together once it commits.
+     * Entity lookups inside it skip {@link EntityCache}.
+     * Nested calls join the outer transaction.
+     */
+    private <V> V runInTransaction(@NonNull Callable<V> body) {
+        boolean ownsChanges = ChangeNotifier.beginBatch();
+        boolean ownsCache = EntityCache.beginTransaction();
+        boolean committed = false;
+        try {
+            V result = database().runInTransaction(() -> {
+                boolean ownsHistory = DatabaseHistory.beginTransaction();
+                try {
+                    V value = body.call();
+                    if (ownsHistory)
+                        database().dataDao().appendHistory(DatabaseHistory.endTransaction());
+                    return value;
+                } finally {
+                    // drops the held events if [body] failed
+                    if (ownsHistory) DatabaseHistory.endTransaction();
+                }
+            });
+            committed = true;
+            return result;
+        } finally {
+            if (ownsCache) EntityCache.endTransaction();
+            if (ownsChanges) ChangeNotifier.endBatch(committed);
+        }
+    }
+
+    /**
+     * Parses [values], then upserts the albums and artists as two sets.
+     *
+     * @return Items inserted or updated
+     */
+    private int upsertItems(
+        @NonNull PathCode path,
+        @NonNull ContentValues[] values
+    ) {
+        DataDao access = database().dataDao();
+        List<Album> albums = new ArrayList<>(values.length);
+        List<Artist> artists = new ArrayList<>();
 
         for (ContentValues value : values) {
             String dataType = value.getAsString("type");
-            String dataContent = value.getAsString("content");
+            // typed rows may leave out the type
+            if (dataType == null && !value.containsKey("content"))
+                dataType = value.containsKey("album_id") ? "album"
+                    : value.containsKey("artist_id") ? "artist" : null;
 
-            switch (dataType) {
+            switch (dataType == null ? "" : dataType) {
                 case "album": {
-                    Album parsed = parseToAlbum(dataContent);
+                    Album parsed = readAlbum(value, null, null);
                     if (parsed == null)
-                        DatabaseHistory.insert(HistoryActionToken.Parse_Failed, "", dataType);
-                    else {
-                        if (access.containsAlbum(parsed.uuid)) {
-                            updatedItems += access.update(parsed);
-                            DatabaseHistory.update(HistoryActionToken.OK, parsed.uuid);
-                        } else {
-                            access.insert(parsed);
-                            if (access.containsAlbum(parsed.uuid)) {
-                                updatedItems++;
-                                DatabaseHistory.insert(HistoryActionToken.OK, parsed.uuid);
-                            } else
-                                DatabaseHistory.insert(HistoryActionToken.Failed, parsed.uuid);
-                        }
-                    }
+                        DatabaseHistory.insert(path, HistoryActionToken.Parse_Failed, "", dataType);
+                    else
+                        albums.add(parsed);
                     break;
                 }
                 case "artist": {
-                    Artist parsed = parseToArtist(dataContent);
+                    Artist parsed = readArtist(value, null, null);
                     if (parsed == null)
-                        DatabaseHistory.insert(HistoryActionToken.Parse_Failed, "", dataType);
-                    else {
-                        if (access.containsArtist(parsed.uuid)) {
-                            updatedItems += access.update(parsed);
-                            DatabaseHistory.update(HistoryActionToken.OK, parsed.uuid);
-                        } else {
-                            access.insert(parsed);
-                            if (access.containsArtist(parsed.uuid)) {
-                                updatedItems++;
-                                DatabaseHistory.insert(HistoryActionToken.OK, parsed.uuid);
-                            } else
-                                DatabaseHistory.insert(HistoryActionToken.Failed, parsed.uuid);
-                        }
-                        updatedItems += access.update(parsed);
-                        DatabaseHistory.insert(HistoryActionToken.OK, parsed.uuid);
-                    }
+                        DatabaseHistory.insert(path, HistoryActionToken.Parse_Failed, "", dataType);
+                    else
+                        artists.add(parsed);
                     break;
                 }
                 default:
-                    DatabaseHistory.insert(HistoryActionToken.Unknown_Type, "", dataType);
+                    DatabaseHistory.insert(path, HistoryActionToken.Unknown_Type, "", dataType);
                     break;
             }
         }
 
-        return updatedItems;
+        int written = 0;
+        if (!artists.isEmpty()) {
+            List<Long> rowIDs = access.upsertArtists(artists);
+            for (int i = 0; i < artists.size(); i++)
+                written += recordUpsert(path, PathCode.Artist, artists.get(i).uuid, rowIDs.get(i));
+        }
+        if (!albums.isEmpty()) {
+            List<Long> rowIDs = access.upsertAlbums(albums);
+            for (int i = 0; i < albums.size(); i++)
+                written += recordUpsert(path, PathCode.Album, albums.get(i).uuid, rowIDs.get(i));
+        }
+        return written;
+    }
+
+    /**
+     * Records the history, and change, of one upserted item
+     *
+     * @param itemPath [PathCode.Album] or [PathCode.Artist]
+     * @param rowID Upsert result; -1 when an existing row was updated
+     * @return 1 if the item was written
+     */
+    private int recordUpsert(
+        @NonNull PathCode path,
+        @NonNull PathCode itemPath,
+        @NonNull String itemID,
+        long rowID
+    ) {
+        if (rowID == -1) {
+            DatabaseHistory.update(path, HistoryActionToken.OK, itemID);
+            ChangeNotifier.itemChanged(itemPath, itemID, ContentResolver.NOTIFY_UPDATE);
+            return 1;
+        }
+        if (rowID > 0) {
+            DatabaseHistory.insert(path, HistoryActionToken.OK, itemID);
+            ChangeNotifier.itemChanged(itemPath, itemID, ContentResolver.NOTIFY_INSERT);
+            return 1;
+        }
+        DatabaseHistory.insert(path, HistoryActionToken.Failed, itemID);
+        return 0;
     }
 }
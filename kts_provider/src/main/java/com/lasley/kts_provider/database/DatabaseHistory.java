@@ -3,125 +3,357 @@ package com.lasley.kts_provider.database;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.lasley.kts_provider.data.HistoryStamp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 
 public class DatabaseHistory {
 
     private static ContentDatabase database;
+    private static HistoryWriter writer;
+
+    // Writer defaults; see [configure]
+    private static int queueCapacity = 1024;
+    private static int batchSize = 64;
+    private static long flushWindowMillis = 250;
+    private static HistoryWriter.OverflowPolicy overflowPolicy = HistoryWriter.OverflowPolicy.Block;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    // How often aggregated counters are written as rollup rows
+    private static long rollupPeriodMillis = 60_000;
+    private static ScheduledExecutorService rollupScheduler;
+    private static final HistoryAggregator aggregator = new HistoryAggregator();
+
+    // Events held for the current thread's database transaction, see [beginTransaction]
+    private static final ThreadLocal<List<HistoryStamp>> transactionSteps = new ThreadLocal<>();
 
+    /**
+     * Policy per [HistoryToken] (ordinal), then per [PathCode] (ordinal).
+     * Replaced as a whole on change, so reads don't need a lock.
+     */
+    private static volatile AuditPolicy[][] policies = defaultPolicies();
+
+    /**
+     * High-level action of a history event.
+     * [code] is what gets stored, so existing codes must never change.
+     */
     public enum HistoryToken {
-        Query, Insert, Delete, Update
+        Query(1), Insert(2), Delete(3), Update(4);
+
+        public final int code;
+
+        HistoryToken(int code) {
+            this.code = code;
+        }
+
+        @Nullable
+        public static HistoryToken fromCode(int code) {
+            for (HistoryToken token : values()) {
+                if (token.code == code) return token;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads are counted and written as periodic rollups, mutations are fully recorded.
+     */
+    private static AuditPolicy[][] defaultPolicies() {
+        HistoryToken[] actions = HistoryToken.values();
+        AuditPolicy[][] result = new AuditPolicy[actions.length][PathCode.values().length];
+        for (HistoryToken action : actions) {
+            AuditPolicy policy = action == HistoryToken.Query
+                ? AuditPolicy.aggregated() : AuditPolicy.full();
+            Arrays.fill(result[action.ordinal()], policy);
+        }
+        return result;
+    }
+
+    /**
+     * Sets how [action] events made through [path] are recorded
+     */
+    public static synchronized void setPolicy(
+        @NonNull HistoryToken action,
+        @NonNull PathCode path,
+        @NonNull AuditPolicy policy
+    ) {
+        AuditPolicy[][] updated = policies.clone();
+        updated[action.ordinal()] = updated[action.ordinal()].clone();
+        updated[action.ordinal()][path.ordinal()] = policy;
+        policies = updated;
+    }
+
+    /**
+     * Sets how [action] events are recorded, for every [PathCode]
+     */
+    public static synchronized void setPolicy(
+        @NonNull HistoryToken action,
+        @NonNull AuditPolicy policy
+    ) {
+        AuditPolicy[][] updated = policies.clone();
+        updated[action.ordinal()] = new AuditPolicy[PathCode.values().length];
+        Arrays.fill(updated[action.ordinal()], policy);
+        policies = updated;
+    }
+
+    public static synchronized void resetPolicies() {
+        policies = defaultPolicies();
+    }
+
+    /**
+     * Sets how often aggregated counts are written; applies from the next [init]
+     */
+    public static synchronized void setRollupPeriod(long periodMillis) {
+        rollupPeriodMillis = periodMillis;
     }
 
     public static void init(Context context) {
-        database = ContentDatabase.getInstance(context);
+        init(ContentDatabase.getInstance(context));
     }
 
     @VisibleForTesting
-    public static void init(ContentDatabase testDatabase) {
+    public static synchronized void init(ContentDatabase testDatabase) {
+        if (database == testDatabase && writer != null) return;
+        shutdown();
         database = testDatabase;
+        writer = new HistoryWriter(
+            database, queueCapacity, batchSize, flushWindowMillis, overflowPolicy
+        );
+
+        rollupScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HistoryRollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rollupScheduler.scheduleAtFixedRate(
+            DatabaseHistory::writeRollups,
+            rollupPeriodMillis, rollupPeriodMillis, TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Queues the aggregated counts (since the last rollup) as rollup rows
+     */
+    private static void writeRollups() {
+        for (HistoryStamp rollup : aggregator.drain())
+            addStep(rollup);
+    }
+
+    /**
+     * Changes how history events are queued and grouped.
+     * Events already queued are written before the new settings apply.
+     *
+     * @param capacity Max events waiting to be written
+     * @param batch Max events committed per transaction
+     * @param windowMillis How long the writer waits for a batch to fill up
+     * @param policy What to do with new events while the queue is full
+     */
+    public static synchronized void configure(
+        int capacity,
+        int batch,
+        long windowMillis,
+        @NonNull HistoryWriter.OverflowPolicy policy
+    ) {
+        queueCapacity = capacity;
+        batchSize = batch;
+        flushWindowMillis = windowMillis;
+        overflowPolicy = policy;
+
+        if (database != null) {
+            ContentDatabase active = database;
+            database = null;
+            init(active);
+        }
+    }
+
+    /**
+     * Holds this thread's events until [endTransaction], instead of queueing them,
+     * so they can be committed in the same transaction as the changes they describe.
+     *
+     * @return false if events were already being held; the outer caller ends and writes them
+     */
+    static boolean beginTransaction() {
+        if (transactionSteps.get() != null) return false;
+        transactionSteps.set(new ArrayList<>());
+        return true;
+    }
+
+    /**
+     * Stops holding this thread's events.
+     *
+     * @return Events held since [beginTransaction], for the caller to write
+     */
+    @NonNull
+    static List<HistoryStamp> endTransaction() {
+        List<HistoryStamp> held = transactionSteps.get();
+        transactionSteps.remove();
+        return held == null ? Collections.emptyList() : held;
+    }
+
+    /**
+     * Asks the writer to commit queued events soon, without waiting for them
+     */
+    public static synchronized void requestFlush() {
+        if (writer != null) writer.requestFlush();
+    }
+
+    /**
+     * Waits until every event queued before this call has been written
+     */
+    public static boolean flush() {
+        return flush(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return false if [timeoutMillis] passed first; the events are still written, later
+     */
+    public static boolean flush(long timeoutMillis) {
+        writeRollups();
+        HistoryWriter active;
+        synchronized (DatabaseHistory.class) {
+            active = writer;
+        }
+        return active == null || active.flush(timeoutMillis);
+    }
+
+    /**
+     * Writes everything still queued and stops the writer.
+     * Events after this point are written directly, until [init] is called again.
+     */
+    public static synchronized void shutdown() {
+        if (rollupScheduler != null) {
+            rollupScheduler.shutdownNow();
+            rollupScheduler = null;
+        }
+        if (writer == null) return;
+        writeRollups();
+        writer.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        writer = null;
+    }
+
+    private static void addStep(
+        HistoryToken action,
+        PathCode path,
+        HistoryActionToken result,
+        @Nullable String id,
+        @Nullable String comments
+    ) {
+        // counted whatever the policy, for the status route
+        RouteMetrics.result(action, path, result);
+
+        AuditPolicy policy = policies[action.ordinal()][path.ordinal()];
+        switch (policy.mode) {
+            case Off:
+                return;
+            case Aggregated:
+                aggregator.count(action, result, path);
+                return;
+            case Sampled:
+                if (result == HistoryActionToken.OK && !policy.sample()) return;
+                break;
+            case Full:
+                break;
+        }
+
+        HistoryStamp step = new HistoryStamp();
+        step.pathCode = path.ordinal();
+        step.actionType = action.code;
+        step.actionResult = result.code;
+        // empty values are stored as null, they take no space in the row
+        step.itemID = id == null || id.isEmpty() ? null : id;
+        step.comments = comments == null || comments.isEmpty() ? null : comments;
+        addStep(step);
     }
 
     private static void addStep(HistoryStamp step) {
-        if (database == null) {
+        List<HistoryStamp> held = transactionSteps.get();
+        if (held != null) {
+            held.add(step);
+            return;
+        }
+
+        HistoryWriter active;
+        ContentDatabase target;
+        synchronized (DatabaseHistory.class) {
+            active = writer;
+            target = database;
+        }
+
+        if (active != null && active.enqueue(step)) return;
+
+        if (target == null) {
             System.out.println("DatabaseHistory: missing");
             return;
         }
-        System.out.println(step);
-        database.dataDao().appendHistory(step);
+        if (active == null) {
+            // writer was shut down; don't lose the event
+            System.out.println(step);
+            target.dataDao().appendHistory(step);
+        }
     }
 
-    public static void query(HistoryActionToken result) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Query.name();
-        step.actionResult = result.name();
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+    public static void query(PathCode path, HistoryActionToken result) {
+        addStep(HistoryToken.Query, path, result, null, null);
     }
 
     public static void query(
+        PathCode path,
         HistoryActionToken result,
         String comments
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Query.name();
-        step.actionResult = result.name();
-        step.comments = comments;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Query, path, result, null, comments);
     }
 
     public static void insert(
+        PathCode path,
         HistoryActionToken result,
         String id
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Insert.name();
-        step.actionResult = result.name();
-        step.itemID = id;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Insert, path, result, id, null);
     }
 
     public static void insert(
+        PathCode path,
         HistoryActionToken result,
         String id,
         String comment
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Insert.name();
-        step.actionResult = result.name();
-        step.itemID = id;
-        step.comments = comment;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Insert, path, result, id, comment);
     }
 
     public static void delete(
+        PathCode path,
         HistoryActionToken result,
         String id
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Delete.name();
-        step.actionResult = result.name();
-        step.itemID = id;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Delete, path, result, id, null);
     }
 
     public static void update(
+        PathCode path,
         HistoryActionToken result,
         String id
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Update.name();
-        step.actionResult = result.name();
-        step.itemID = id;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Update, path, result, id, null);
     }
 
     public static void update(
+        PathCode path,
         HistoryActionToken result,
         String id,
         String comment
     ) {
-        HistoryStamp step = new HistoryStamp();
-        step.actionType = HistoryToken.Update.name();
-        step.actionResult = result.name();
-        step.itemID = id;
-        step.comments = comment;
-        step.timestamp = System.currentTimeMillis();
-        addStep(step);
+        addStep(HistoryToken.Update, path, result, id, comment);
     }
 }
-
-enum HistoryActionToken {
-    OK, Failed,
-    Missing_ID, Unknown_ID, Item_Missing,
-    Unknown_URI, Unknown_Type,
-    Missing_Content, Parse_Failed
-}
@@ -0,0 +1,239 @@
+package com.lasley.kts_provider.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Schema changes of {@link ContentDatabase}, from the oldest version to the current one.
+ * <p>
+ * Each create statement must match what Room generates for the entity, or the schema
+ * validation after the migration will fail.
+ */
+class DatabaseMigrations {
+
+    /**
+     * History rows:
+     * - keyed by an auto-increment sequence, instead of the (colliding) millisecond timestamp
+     * - action type and result are stored as token codes, instead of the token names
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `_historyActions_new` (" +
+                "`sequence` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                "`timestamp` INTEGER NOT NULL, " +
+                "`actionType` INTEGER NOT NULL, " +
+                "`actionResult` INTEGER NOT NULL, " +
+                "`item_id` TEXT, " +
+                "`comments` TEXT)");
+
+            StringBuilder actionCodes = new StringBuilder("CASE `actionType`");
+            for (DatabaseHistory.HistoryToken token : DatabaseHistory.HistoryToken.values())
+                actionCodes.append(" WHEN '").append(token.name()).append("' THEN ").append(token.code);
+            actionCodes.append(" ELSE 0 END");
+
+            StringBuilder resultCodes = new StringBuilder("CASE `actionResult`");
+            for (HistoryActionToken token : HistoryActionToken.values())
+                resultCodes.append(" WHEN '").append(token.name()).append("' THEN ").append(token.code);
+            resultCodes.append(" ELSE 0 END");
+
+            // oldest first, so the new sequence follows the original order
+            db.execSQL("INSERT INTO `_historyActions_new` " +
+                "(`timestamp`, `actionType`, `actionResult`, `item_id`, `comments`) " +
+                "SELECT `timestamp`, " + actionCodes + ", " + resultCodes + ", " +
+                "NULLIF(`item_id`, ''), NULLIF(`comments`, '') " +
+                "FROM `_historyActions` ORDER BY `timestamp`");
+
+            db.execSQL("DROP TABLE `_historyActions`");
+            db.execSQL("ALTER TABLE `_historyActions_new` RENAME TO `_historyActions`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__historyActions_item_id` " +
+                "ON `_historyActions` (`item_id`)");
+        }
+    };
+
+    /**
+     * History rows record the path of the request, and how many events they stand for
+     * (aggregated rollup rows)
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `_historyActions` " +
+                "ADD COLUMN `path_code` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `_historyActions` " +
+                "ADD COLUMN `occurrences` INTEGER NOT NULL DEFAULT 1");
+        }
+    };
+
+    /**
+     * Composite indexes for keyset pagination on (updatedTime, id).
+     * The (artist_id, updatedTime, album_id) index replaces the single artist_id index.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS `index__album_artist_id`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__album_updatedTime_album_id` " +
+                "ON `_album` (`updatedTime`, `album_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__album_artist_id_updatedTime_album_id` " +
+                "ON `_album` (`artist_id`, `updatedTime`, `album_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__artist_updatedTime_artist_id` " +
+                "ON `_artist` (`updatedTime`, `artist_id`)");
+        }
+    };
+
+    /**
+     * Full-text search tables over album and artist names, see {@link #createSearchTable}
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            createSearchTable(db, "_album_fts", "_album");
+            createSearchTable(db, "_artist_fts", "_artist");
+        }
+    };
+
+    /**
+     * Creates an external content FTS4 table over the "name" column of [contentTable],
+     * along with the sync triggers which Room would create for it, then indexes the
+     * existing rows.
+     */
+    static void createSearchTable(
+        @NonNull SupportSQLiteDatabase db,
+        @NonNull String ftsTable,
+        @NonNull String contentTable
+    ) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `" + ftsTable + "` " +
+            "USING FTS4(`name` TEXT, tokenize=unicode61, content=`" + contentTable + "`)");
+
+        String trigger = "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_" + ftsTable;
+        String removeRow = " BEGIN DELETE FROM `" + ftsTable + "` WHERE `docid`=OLD.`rowid`; END";
+        String addRow = " BEGIN INSERT INTO `" + ftsTable + "`(`docid`, `name`) " +
+            "VALUES (NEW.`rowid`, NEW.`name`); END";
+
+        db.execSQL(trigger + "_BEFORE_UPDATE BEFORE UPDATE ON `" + contentTable + "`" + removeRow);
+        db.execSQL(trigger + "_BEFORE_DELETE BEFORE DELETE ON `" + contentTable + "`" + removeRow);
+        db.execSQL(trigger + "_AFTER_UPDATE AFTER UPDATE ON `" + contentTable + "`" + addRow);
+        db.execSQL(trigger + "_AFTER_INSERT AFTER INSERT ON `" + contentTable + "`" + addRow);
+
+        db.execSQL("INSERT INTO `" + ftsTable + "`(`" + ftsTable + "`) VALUES ('rebuild')");
+    }
+
+    /**
+     * Artist's albums come from "_album.artist_id" alone; the "album_ids" column is dropped.
+     * <p>
+     * The table is rebuilt with its rowids, so the search table's docids stay valid;
+     * dropping the old table also drops its triggers, which are created again.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `_artist_new` (" +
+                "`artist_id` TEXT NOT NULL, " +
+                "`name` TEXT, " +
+                "`createdTime` INTEGER NOT NULL, " +
+                "`updatedTime` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`artist_id`))");
+
+            db.execSQL("INSERT INTO `_artist_new` " +
+                "(`rowid`, `artist_id`, `name`, `createdTime`, `updatedTime`) " +
+                "SELECT `rowid`, `artist_id`, `name`, `createdTime`, `updatedTime` FROM `_artist`");
+
+            db.execSQL("DROP TABLE `_artist`");
+            db.execSQL("ALTER TABLE `_artist_new` RENAME TO `_artist`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__artist_updatedTime_artist_id` " +
+                "ON `_artist` (`updatedTime`, `artist_id`)");
+            createSearchTable(db, "_artist_fts", "_artist");
+        }
+    };
+
+    /**
+     * Change log for delta sync, see {@link #createChangeLogTriggers}.
+     * Existing items are logged as changed, so a sync from 0 returns all of them.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `_changeLog` (" +
+                "`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                "`type` TEXT NOT NULL, " +
+                "`item_id` TEXT NOT NULL, " +
+                "`deleted` INTEGER NOT NULL, " +
+                "`changedTime` INTEGER NOT NULL)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index__changeLog_type_item_id` " +
+                "ON `_changeLog` (`type`, `item_id`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `_meta` (" +
+                "`name` TEXT NOT NULL, " +
+                "`value` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`name`))");
+
+            db.execSQL("INSERT INTO `_changeLog` (`type`, `item_id`, `deleted`, `changedTime`) " +
+                "SELECT 'artist', `artist_id`, 0, `updatedTime` FROM `_artist` ORDER BY `updatedTime`");
+            db.execSQL("INSERT INTO `_changeLog` (`type`, `item_id`, `deleted`, `changedTime`) " +
+                "SELECT 'album', `album_id`, 0, `updatedTime` FROM `_album` ORDER BY `updatedTime`");
+
+            createChangeLogTriggers(db);
+        }
+    };
+
+    /**
+     * Triggers which log every insert, update and delete of albums and artists in "_changeLog".
+     * <p>
+     * The item's previous entry is removed first, so each item has one entry at its latest
+     * sequence. Not managed by Room, so they're also created with a new database.
+     */
+    static void createChangeLogTriggers(@NonNull SupportSQLiteDatabase db) {
+        createChangeLogTriggers(db, "_album", "album", "album_id");
+        createChangeLogTriggers(db, "_artist", "artist", "artist_id");
+    }
+
+    private static void createChangeLogTriggers(
+        @NonNull SupportSQLiteDatabase db,
+        @NonNull String table,
+        @NonNull String type,
+        @NonNull String idColumn
+    ) {
+        String trigger = "CREATE TRIGGER IF NOT EXISTS changelog_" + table;
+        String now = "CAST(strftime('%s', 'now') AS INTEGER) * 1000";
+
+        String logNew = " DELETE FROM `_changeLog` WHERE `type` = '" + type + "' AND `item_id` = NEW.`" + idColumn + "`;" +
+            " INSERT INTO `_changeLog` (`type`, `item_id`, `deleted`, `changedTime`)" +
+            " VALUES ('" + type + "', NEW.`" + idColumn + "`, 0, " + now + ");";
+        String logOld = " DELETE FROM `_changeLog` WHERE `type` = '" + type + "' AND `item_id` = OLD.`" + idColumn + "`;" +
+            " INSERT INTO `_changeLog` (`type`, `item_id`, `deleted`, `changedTime`)" +
+            " VALUES ('" + type + "', OLD.`" + idColumn + "`, 1, " + now + ");";
+
+        db.execSQL(trigger + "_AFTER_INSERT AFTER INSERT ON `" + table + "` BEGIN" + logNew + " END");
+        db.execSQL(trigger + "_AFTER_UPDATE AFTER UPDATE ON `" + table + "` BEGIN" + logNew + " END");
+        db.execSQL(trigger + "_AFTER_DELETE AFTER DELETE ON `" + table + "` BEGIN" + logOld + " END");
+        // an item which changed its ID leaves a tombstone under the old one
+        db.execSQL(trigger + "_AFTER_RENAME AFTER UPDATE OF `" + idColumn + "` ON `" + table + "`" +
+            " WHEN OLD.`" + idColumn + "` != NEW.`" + idColumn + "` BEGIN" + logOld + " END");
+    }
+
+    /**
+     * Name indexes for sorted and filtered queries, see {@link QueryBuilder}
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__album_name_album_id` " +
+                "ON `_album` (`name`, `album_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__album_artist_id_name_album_id` " +
+                "ON `_album` (`artist_id`, `name`, `album_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index__artist_name_artist_id` " +
+                "ON `_artist` (`name`, `artist_id`)");
+        }
+    };
+
+    static final Migration[] ALL = {
+        MIGRATION_1_2,
+        MIGRATION_2_3,
+        MIGRATION_3_4,
+        MIGRATION_4_5,
+        MIGRATION_5_6,
+        MIGRATION_6_7,
+        MIGRATION_7_8,
+    };
+}
@@ -0,0 +1,217 @@
+package com.lasley.kts_provider.database;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.lasley.kts_provider.data.Album;
+import com.lasley.kts_provider.data.Artist;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Read-through LRU cache of {@link Album} and {@link Artist} entities, by item ID.
+ * <p>
+ * Sized by an estimate of each entity's memory; items which don't exist are cached too.
+ * Every change reported to {@link ChangeNotifier} invalidates its item, when it's reported,
+ * and bumps the {@link DataGeneration}; a read which started before an invalidation isn't cached.
+ * Reads inside a transaction ([beginTransaction] .. [endTransaction]) skip the cache,
+ * since they may see uncommitted rows.
+ * <p>
+ * Cached entities are shared; callers must not modify them.
+ */
+public class EntityCache {
+
+    static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    // cached for items which don't exist
+    private static final Album MISSING_ALBUM = new Album();
+    private static final Artist MISSING_ARTIST = new Artist();
+
+    private static final LruCache<String, Album> albums = new LruCache<String, Album>(DEFAULT_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Album value) {
+            return entrySize(key, value.name, value.artist);
+        }
+    };
+
+    private static final LruCache<String, Artist> artists = new LruCache<String, Artist>(DEFAULT_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Artist value) {
+            return entrySize(key, value.name, null);
+        }
+    };
+
+    // items invalidated in this thread's transaction, invalidated again once it ends
+    private static final ThreadLocal<Set<String>> transactionItems = new ThreadLocal<>();
+
+    /**
+     * @return Album [id], or null if it doesn't exist
+     */
+    @Nullable
+    public static Album album(@NonNull DataDao access, @NonNull String id) {
+        if (transactionItems.get() != null) return access.getAlbumItem(id);
+
+        Album cached = albums.get(id);
+        if (cached != null) return cached == MISSING_ALBUM ? null : cached;
+
+        long readGeneration = DataGeneration.current();
+        Album album = access.getAlbumItem(id);
+        store(albums, id, album == null ? MISSING_ALBUM : album, readGeneration);
+        return album;
+    }
+
+    /**
+     * @return Artist [id], or null if it doesn't exist
+     */
+    @Nullable
+    public static Artist artist(@NonNull DataDao access, @NonNull String id) {
+        if (transactionItems.get() != null) return access.getArtistItem(id);
+
+        Artist cached = artists.get(id);
+        if (cached != null) return cached == MISSING_ARTIST ? null : cached;
+
+        long readGeneration = DataGeneration.current();
+        Artist artist = access.getArtistItem(id);
+        store(artists, id, artist == null ? MISSING_ARTIST : artist, readGeneration);
+        return artist;
+    }
+
+    public static boolean containsAlbum(@NonNull DataDao access, @NonNull String id) {
+        return album(access, id) != null;
+    }
+
+    public static boolean containsArtist(@NonNull DataDao access, @NonNull String id) {
+        return artist(access, id) != null;
+    }
+
+    private static synchronized <V> void store(
+        @NonNull LruCache<String, V> cache,
+        @NonNull String id,
+        @NonNull V value,
+        long readGeneration
+    ) {
+        // an item may have changed since the read started
+        if (readGeneration == DataGeneration.current())
+            cache.put(id, value);
+    }
+
+    /**
+     * Drops item [id] of [path] ({@link PathCode#Album} or {@link PathCode#Artist})
+     */
+    static void invalidate(@NonNull PathCode path, @NonNull String id) {
+        Set<String> held = transactionItems.get();
+        if (held != null) held.add(path.name() + ":" + id);
+        remove(path, id);
+    }
+
+    private static synchronized void remove(@NonNull PathCode path, @NonNull String id) {
+        DataGeneration.bump();
+        if (path == PathCode.Album)
+            albums.remove(id);
+        else if (path == PathCode.Artist)
+            artists.remove(id);
+    }
+
+    /**
+     * Drops every item, e.g. after the tables were cleared
+     */
+    public static synchronized void clear() {
+        DataGeneration.bump();
+        albums.evictAll();
+        artists.evictAll();
+    }
+
+    /**
+     * Reads on this thread skip the cache until [endTransaction]
+     *
+     * @return false if a transaction was already open; the outer caller ends it
+     */
+    static boolean beginTransaction() {
+        if (transactionItems.get() != null) return false;
+        transactionItems.set(new HashSet<>());
+        return true;
+    }
+
+    /**
+     * Invalidates the transaction's items again, now that it committed or rolled back;
+     * other threads may have cached them from before the commit.
+     */
+    static void endTransaction() {
+        Set<String> held = transactionItems.get();
+        transactionItems.remove();
+        if (held == null) return;
+        for (String item : held) {
+            int split = item.indexOf(':');
+            remove(PathCode.valueOf(item.substring(0, split)), item.substring(split + 1));
+        }
+    }
+
+    /**
+     * Sets the limit (estimated bytes) of each of the album and artist caches
+     */
+    public static void resize(int maxBytes) {
+        albums.resize(maxBytes);
+        artists.resize(maxBytes);
+    }
+
+    @NonNull
+    public static Stats stats() {
+        return new Stats(albums, artists);
+    }
+
+    /**
+     * Counts since the process started, across the album and artist caches
+     */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long sizeBytes;
+        public final long maxBytes;
+
+        Stats(LruCache<?, ?>... caches) {
+            long hits = 0, misses = 0, evictions = 0, size = 0, max = 0;
+            for (LruCache<?, ?> cache : caches) {
+                synchronized (cache) {
+                    hits += cache.hitCount();
+                    misses += cache.missCount();
+                    evictions += cache.evictionCount();
+                    size += cache.size();
+                    max += cache.maxSize();
+                }
+            }
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.sizeBytes = size;
+            this.maxBytes = max;
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "hits: %d, misses: %d (%.1f%% hit), evictions: %d, size: %d / %d bytes",
+                hits, misses, hitRate() * 100, evictions, sizeBytes, maxBytes);
+        }
+    }
+
+    /**
+     * Rough memory of a cached entity: object and map entry overhead, plus its strings (UTF-16)
+     */
+    private static int entrySize(@NonNull String key, @Nullable String name, @Nullable String other) {
+        int size = 96 + key.length() * 2;
+        if (name != null) size += 40 + name.length() * 2;
+        if (other != null) size += 40 + other.length() * 2;
+        return size;
+    }
+}
@@ -0,0 +1,28 @@
+package com.lasley.kts_provider.database;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Result of a history event.
+ * [code] is what gets stored, so existing codes must never change.
+ */
+public enum HistoryActionToken {
+    OK(1), Failed(2),
+    Missing_ID(3), Unknown_ID(4), Item_Missing(5),
+    Unknown_URI(6), Unknown_Type(7),
+    Missing_Content(8), Parse_Failed(9);
+
+    public final int code;
+
+    HistoryActionToken(int code) {
+        this.code = code;
+    }
+
+    @Nullable
+    public static HistoryActionToken fromCode(int code) {
+        for (HistoryActionToken token : values()) {
+            if (token.code == code) return token;
+        }
+        return null;
+    }
+}
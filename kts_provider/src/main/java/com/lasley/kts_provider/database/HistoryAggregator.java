@@ -0,0 +1,64 @@
+package com.lasley.kts_provider.database;
+
+import com.lasley.kts_provider.data.HistoryStamp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory counters of history events, keyed by (action, result, path).
+ * <p>
+ * Counting is allocation-free; each key has its own striped {@link LongAdder}.
+ * {@link #drain()} turns the counts since the last drain into rollup rows.
+ */
+class HistoryAggregator {
+
+    private static final DatabaseHistory.HistoryToken[] actions = DatabaseHistory.HistoryToken.values();
+    private static final HistoryActionToken[] results = HistoryActionToken.values();
+    private static final PathCode[] paths = PathCode.values();
+
+    private final LongAdder[] counters;
+
+    HistoryAggregator() {
+        counters = new LongAdder[actions.length * results.length * paths.length];
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new LongAdder();
+    }
+
+    private static int indexOf(int action, int result, int path) {
+        return (action * results.length + result) * paths.length + path;
+    }
+
+    void count(DatabaseHistory.HistoryToken action, HistoryActionToken result, PathCode path) {
+        counters[indexOf(action.ordinal(), result.ordinal(), path.ordinal())].increment();
+    }
+
+    /**
+     * Resets the counters, returning a rollup row for each key which was counted
+     */
+    List<HistoryStamp> drain() {
+        List<HistoryStamp> rollups = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (int a = 0; a < actions.length; a++) {
+            for (int r = 0; r < results.length; r++) {
+                for (int p = 0; p < paths.length; p++) {
+                    long total = counters[indexOf(a, r, p)].sumThenReset();
+                    if (total == 0) continue;
+
+                    HistoryStamp rollup = new HistoryStamp();
+                    rollup.timestamp = now;
+                    rollup.actionType = actions[a].code;
+                    rollup.actionResult = results[r].code;
+                    rollup.pathCode = paths[p].ordinal();
+                    rollup.occurrences = total;
+                    rollup.comments = "Rollup";
+                    rollups.add(rollup);
+                }
+            }
+        }
+
+        return rollups;
+    }
+}
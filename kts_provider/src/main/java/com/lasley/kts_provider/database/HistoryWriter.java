@@ -0,0 +1,268 @@
+package com.lasley.kts_provider.database;
+
+import androidx.annotation.NonNull;
+
+import com.lasley.kts_provider.data.HistoryStamp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background writer for {@link HistoryStamp} events.
+ * <p>
+ * Callers only pay for an enqueue; a single worker thread commits the queued events in one
+ * transaction once {@link #batchSize} events are waiting, or once {@link #flushWindowMillis}
+ * has passed since the worker picked up the first event of the group.
+ * Events still queued when the process is killed are lost: those accepted in the last
+ * {@link #flushWindowMillis} (or the batch being committed). There's no shutdown callback on a
+ * device; the app only flushes early once it's in the background (ProviderApplication#onTrimMemory).
+ */
+public class HistoryWriter {
+
+    /**
+     * What happens to a new event while the queue is at {@link #capacity}
+     */
+    public enum OverflowPolicy {
+        /** Caller waits until the worker has made room */
+        Block,
+        /** Oldest queued event is discarded to make room for the new one */
+        Drop_Oldest,
+        /** New event is discarded, and counted in {@link #droppedCount()} */
+        Count_And_Drop
+    }
+
+    private final ContentDatabase database;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushWindowMillis;
+    private final OverflowPolicy policy;
+
+    private final ArrayDeque<HistoryStamp> pending;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasEvents = lock.newCondition();
+    private final Condition hasRoom = lock.newCondition();
+    private final Condition processedEvents = lock.newCondition();
+
+    private final Thread worker;
+    private boolean running = true;
+    private boolean flushRequested = false;
+
+    // events accepted into the queue, and events which have left it (committed or dropped)
+    private long acceptedCount = 0;
+    private long processedCount = 0;
+    private long droppedCount = 0;
+
+    public HistoryWriter(
+        @NonNull ContentDatabase database,
+        int capacity,
+        int batchSize,
+        long flushWindowMillis,
+        @NonNull OverflowPolicy policy
+    ) {
+        if (capacity < 1 || batchSize < 1)
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+
+        this.database = database;
+        this.capacity = capacity;
+        this.batchSize = Math.min(batchSize, capacity);
+        this.flushWindowMillis = Math.max(0, flushWindowMillis);
+        this.policy = policy;
+        pending = new ArrayDeque<>(capacity);
+
+        worker = new Thread(this::runLoop, "HistoryWriter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues [step] to be written by the worker thread.
+     *
+     * @return false if the event was rejected, either by {@link OverflowPolicy#Count_And_Drop}
+     * or because the writer was already shut down.
+     */
+    public boolean enqueue(@NonNull HistoryStamp step) {
+        lock.lock();
+        try {
+            if (!running) return false;
+
+            while (pending.size() >= capacity) {
+                if (policy == OverflowPolicy.Count_And_Drop) {
+                    droppedCount++;
+                    return false;
+                } else if (policy == OverflowPolicy.Drop_Oldest) {
+                    pending.pollFirst();
+                    droppedCount++;
+                    processedCount++;
+                } else {
+                    hasRoom.awaitUninterruptibly();
+                    if (!running) return false;
+                }
+            }
+
+            pending.addLast(step);
+            acceptedCount++;
+            // wake the worker for the first event of a group, and again once a batch is ready
+            if (pending.size() == 1 || pending.size() >= batchSize)
+                hasEvents.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asks the worker to commit everything queued so far, without waiting for it
+     */
+    public void requestFlush() {
+        lock.lock();
+        try {
+            flushRequested = true;
+            hasEvents.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commits everything queued before this call, and waits until it has been written.
+     *
+     * @return false if [timeoutMillis] passed before the queued events were written
+     */
+    public boolean flush(long timeoutMillis) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            long target = acceptedCount;
+            flushRequested = true;
+            hasEvents.signal();
+            while (processedCount < target && worker.isAlive()) {
+                if (remaining <= 0) return false;
+                remaining = processedEvents.awaitNanos(remaining);
+            }
+            return processedCount >= target;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events, writes everything still queued, then stops the worker thread.
+     */
+    public void shutdown(long timeoutMillis) {
+        lock.lock();
+        try {
+            running = false;
+            hasEvents.signalAll();
+            hasRoom.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Total of events which were discarded by the {@link OverflowPolicy}
+     */
+    public long droppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Events currently waiting to be written
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            List<HistoryStamp> batch;
+
+            lock.lock();
+            try {
+                while (pending.isEmpty() && running)
+                    hasEvents.awaitUninterruptibly();
+
+                if (pending.isEmpty()) break; // stopped, and nothing left to write
+
+                // group events until the batch is full, or the window has passed
+                long remaining = TimeUnit.MILLISECONDS.toNanos(flushWindowMillis);
+                while (pending.size() < batchSize && running && !flushRequested && remaining > 0) {
+                    try {
+                        remaining = hasEvents.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                int size = Math.min(batchSize, pending.size());
+                batch = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    batch.add(pending.pollFirst());
+                if (pending.isEmpty())
+                    flushRequested = false;
+                hasRoom.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            commit(batch);
+
+            lock.lock();
+            try {
+                processedCount += batch.size();
+                processedEvents.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        lock.lock();
+        try {
+            processedEvents.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commit(List<HistoryStamp> batch) {
+        try {
+            // @Insert of a list runs as a single transaction
+            database.dataDao().appendHistory(batch);
+            for (HistoryStamp step : batch)
+                System.out.println(step);
+        } catch (Throwable e) {
+            // one bad event shouldn't take the rest of the group with it
+            System.out.println("HistoryWriter: batch of " + batch.size() + " failed, " + e);
+            for (HistoryStamp step : batch) {
+                try {
+                    database.dataDao().appendHistory(step);
+                } catch (Throwable stepError) {
+                    System.out.println("HistoryWriter: dropped " + step + ", " + stepError);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.lasley.kts_provider.database;
+
+import android.database.Cursor;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Position of a keyset page: the (updatedTime, id) of the last row of the previous page.
+ * <p>
+ * Clients only see the {@link #encode() encoded} form, and pass it back as the "after" query.
+ */
+class PageToken {
+    /** Position before the first row */
+    static final PageToken START = new PageToken(Long.MIN_VALUE, "");
+
+    final long updatedTime;
+    @NonNull
+    final String id;
+
+    PageToken(long updatedTime, @NonNull String id) {
+        this.updatedTime = updatedTime;
+        this.id = id;
+    }
+
+    @NonNull
+    String encode() {
+        byte[] raw = (updatedTime + "|" + id).getBytes(StandardCharsets.UTF_8);
+        return Base64.encodeToString(raw, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+    }
+
+    /**
+     * @return null if [token] is not a token made by {@link #encode()}
+     */
+    @Nullable
+    static PageToken parse(@Nullable String token) {
+        if (token == null || token.isEmpty()) return null;
+        try {
+            String raw = new String(Base64.decode(token, Base64.URL_SAFE), StandardCharsets.UTF_8);
+            int split = raw.indexOf('|');
+            if (split <= 0) return null;
+            return new PageToken(Long.parseLong(raw.substring(0, split)), raw.substring(split + 1));
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Token of the cursor's last row, leaving the cursor before its first row
+     */
+    @Nullable
+    static PageToken lastRowOf(@NonNull Cursor cursor, @NonNull String idColumn) {
+        if (!cursor.moveToLast()) return null;
+        PageToken token = new PageToken(
+            cursor.getLong(cursor.getColumnIndexOrThrow("updatedTime")),
+            cursor.getString(cursor.getColumnIndexOrThrow(idColumn))
+        );
+        cursor.moveToPosition(-1);
+        return token;
+    }
+}
@@ -12,7 +12,10 @@ public enum PathCode {
     Artists,
     Artist,
     Artist_albums,
-    Status;
+    Status,
+    // stored in history by ordinal, so new paths are only added at the end
+    Changes,
+    Snapshot;
 
     public static PathCode parseToCode(int code) {
         for (PathCode path : values()) {
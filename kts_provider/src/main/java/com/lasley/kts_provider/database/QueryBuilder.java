@@ -0,0 +1,252 @@
+package com.lasley.kts_provider.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Album and artist queries, shaped by a request's projection, selection and sort order.
+ * <p>
+ * Only known columns are accepted, and values are always bound as arguments.
+ * Selection: clauses joined by AND, each one of
+ * - column = ?
+ * - column IN (?, ?, ...)
+ * - name PREFIX ? -> names starting with the argument (e.g. "Dark"); case-sensitive, unlike LIKE,
+ *   so the name index can be used. LIKE itself is rejected rather than run with other semantics
+ * - time column >, >=, <, <= ?
+ * Sort order: comma-separated "column [ASC|DESC]"; ties are ordered by the item ID.
+ *
+ * @throws IllegalArgumentException (from each step) if the request doesn't fit
+ */
+class QueryBuilder {
+
+    private enum Kind {
+        /** =, IN */
+        ID,
+        /** =, PREFIX */
+        Name,
+        /** =, <, <=, >, >= */
+        Time,
+        /** Projection only */
+        Derived
+    }
+
+    enum Table {
+        Albums("_album", "album_id"),
+        Artists("_artist", "artist_id");
+
+        final String name;
+        final String idColumn;
+        // column -> kind, in "SELECT *" order
+        final Map<String, Kind> columns = new LinkedHashMap<>();
+
+        Table(String name, String idColumn) {
+            this.name = name;
+            this.idColumn = idColumn;
+        }
+
+        static {
+            Albums.columns.put("album_id", Kind.ID);
+            Albums.columns.put("name", Kind.Name);
+            Albums.columns.put("artist_id", Kind.ID);
+            Albums.columns.put("createdTime", Kind.Time);
+            Albums.columns.put("updatedTime", Kind.Time);
+
+            Artists.columns.put("artist_id", Kind.ID);
+            Artists.columns.put("name", Kind.Name);
+            Artists.columns.put("createdTime", Kind.Time);
+            Artists.columns.put("updatedTime", Kind.Time);
+            Artists.columns.put("album_ids", Kind.Derived);
+        }
+    }
+
+    private static final Pattern andSplit = Pattern.compile("\\s+(?i:AND)\\s+");
+    private static final Pattern compareClause =
+        Pattern.compile("^(\\w+)\\s*(=|<=|>=|<|>)\\s*\\?$");
+    private static final Pattern inClause =
+        Pattern.compile("^(\\w+)\\s+(?i:IN)\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)$");
+    private static final Pattern prefixClause =
+        Pattern.compile("^(\\w+)\\s+(?i:PREFIX)\\s+\\?$");
+    private static final Pattern likeClause =
+        Pattern.compile("^\\w+\\s+(?i:NOT\\s+)?(?i:LIKE)\\b.*$");
+    private static final Pattern sortTerm =
+        Pattern.compile("^(\\w+)(?:\\s+(?i:(ASC|DESC)))?$");
+
+    // sorts after every other character, so it closes a prefix range
+    private static final String maxCharacter = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    private final Table table;
+    private final List<String> projection = new ArrayList<>();
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> args = new ArrayList<>();
+    private final List<String> order = new ArrayList<>();
+
+    QueryBuilder(@NonNull Table table) {
+        this.table = table;
+    }
+
+    /**
+     * Columns to return; all of them when [columns] is null or empty
+     */
+    @NonNull
+    QueryBuilder project(@Nullable String[] columns) {
+        projection.clear();
+        if (columns == null || columns.length == 0) return this;
+
+        for (String column : columns) {
+            if (!table.columns.containsKey(column))
+                throw new IllegalArgumentException("Unknown column: " + column);
+            if (!projection.contains(column))
+                projection.add(column);
+        }
+        return this;
+    }
+
+    /**
+     * Adds "[column] = [value]", for conditions which come from the route itself
+     */
+    @NonNull
+    QueryBuilder where(@NonNull String column, @NonNull String value) {
+        conditions.add(column + " = ?");
+        args.add(value);
+        return this;
+    }
+
+    /**
+     * Adds the clauses of [selection], see the class docs for the grammar
+     */
+    @NonNull
+    QueryBuilder select(@Nullable String selection, @Nullable String[] selectionArgs) {
+        if (selection == null || selection.trim().isEmpty()) return this;
+        String[] values = selectionArgs == null ? new String[0] : selectionArgs;
+        int next = 0;
+
+        for (String clause : andSplit.split(selection.trim())) {
+            clause = clause.trim();
+            Matcher match;
+
+            if ((match = compareClause.matcher(clause)).matches()) {
+                String column = match.group(1);
+                String operator = match.group(2);
+                Kind kind = filterKind(column);
+                if (kind != Kind.Time && !operator.equals("="))
+                    throw new IllegalArgumentException("Only = applies to " + column);
+                conditions.add(column + " " + operator + " ?");
+                args.add(argument(kind, values, next++));
+
+            } else if ((match = inClause.matcher(clause)).matches()) {
+                String column = match.group(1);
+                if (filterKind(column) != Kind.ID)
+                    throw new IllegalArgumentException("IN doesn't apply to " + column);
+                int count = clause.length() - clause.replace("?", "").length();
+                if (count > DatabaseHelper.MAX_BOUND_IDS)
+                    throw new IllegalArgumentException("Too many values for " + column);
+                StringBuilder list = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    list.append(i == 0 ? "?" : ", ?");
+                    args.add(argument(Kind.ID, values, next++));
+                }
+                conditions.add(column + " IN (" + list + ")");
+
+            } else if ((match = prefixClause.matcher(clause)).matches()) {
+                String column = match.group(1);
+                if (filterKind(column) != Kind.Name)
+                    throw new IllegalArgumentException("PREFIX doesn't apply to " + column);
+                String prefix = (String) argument(Kind.Name, values, next++);
+                if (prefix.isEmpty()) continue;
+
+                // a range, so the name index can be used
+                conditions.add(column + " >= ? AND " + column + " < ?");
+                args.add(prefix);
+                args.add(prefix + maxCharacter);
+
+            } else if (likeClause.matcher(clause).matches()) {
+                // SQLite's LIKE ignores case, which a range on the name index can't
+                throw new IllegalArgumentException("LIKE isn't supported, use \"name PREFIX ?\": " + clause);
+
+            } else
+                throw new IllegalArgumentException("Unsupported clause: " + clause);
+        }
+
+        if (next != values.length)
+            throw new IllegalArgumentException(
+                "Selection takes " + next + " arguments, got " + values.length);
+        return this;
+    }
+
+    /**
+     * Sets the order of the rows, see the class docs for the format
+     */
+    @NonNull
+    QueryBuilder orderBy(@Nullable String sortOrder) {
+        order.clear();
+        if (sortOrder == null || sortOrder.trim().isEmpty()) return this;
+
+        for (String term : sortOrder.split(",")) {
+            Matcher match = sortTerm.matcher(term.trim());
+            if (!match.matches())
+                throw new IllegalArgumentException("Unsupported sort: " + term);
+            String column = match.group(1);
+            filterKind(column);
+            String direction = match.group(2) == null ? "ASC" : match.group(2).toUpperCase(Locale.ROOT);
+            order.add(column + " " + direction);
+        }
+        return this;
+    }
+
+    @NonNull
+    SupportSQLiteQuery build() {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (projection.isEmpty()) {
+            sql.append("*");
+            if (table == Table.Artists)
+                sql.append(", ").append(DataDao.ARTIST_ALBUM_IDS);
+        } else {
+            for (int i = 0; i < projection.size(); i++) {
+                if (i > 0) sql.append(", ");
+                String column = projection.get(i);
+                sql.append(column.equals("album_ids") ? DataDao.ARTIST_ALBUM_IDS : column);
+            }
+        }
+        sql.append(" FROM ").append(table.name);
+
+        for (int i = 0; i < conditions.size(); i++)
+            sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+
+        if (!order.isEmpty()) {
+            sql.append(" ORDER BY ");
+            for (String term : order)
+                sql.append(term).append(", ");
+            sql.append(table.idColumn);
+        }
+
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    private Kind filterKind(String column) {
+        Kind kind = table.columns.get(column);
+        if (kind == null || kind == Kind.Derived)
+            throw new IllegalArgumentException("Unknown column: " + column);
+        return kind;
+    }
+
+    private static Object argument(Kind kind, String[] values, int index) {
+        if (index >= values.length || values[index] == null)
+            throw new IllegalArgumentException("Missing argument " + index);
+        if (kind != Kind.Time) return values[index];
+        try {
+            return Long.parseLong(values[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a time: " + values[index]);
+        }
+    }
+}
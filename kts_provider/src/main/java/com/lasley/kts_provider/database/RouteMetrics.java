@@ -0,0 +1,184 @@
+package com.lasley.kts_provider.database;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+
+import com.lasley.kts_provider.database.DatabaseHistory.HistoryToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live request metrics per (action, path), for the "status" route.
+ * <p>
+ * Recording is allocation-free; every value is a striped {@link LongAdder} (or
+ * {@link LongAccumulator} for the max), in flat arrays made up front.
+ * Latency goes into a histogram of power-of-two microsecond buckets, so a percentile is the
+ * upper bound of its bucket (within 2x). Counts are totals since the process started.
+ */
+class RouteMetrics {
+
+    private static final HistoryToken[] actions = HistoryToken.values();
+    private static final HistoryActionToken[] results = HistoryActionToken.values();
+    private static final PathCode[] paths = PathCode.values();
+
+    // bucket i: latency under 2^i microseconds (bucket 0: under 1); the last one takes the rest
+    private static final int BUCKETS = 32;
+
+    private static final int KEYS = actions.length * paths.length;
+
+    private static final LongAdder[] requests = adders(KEYS);
+    private static final LongAdder[] inFlight = adders(KEYS);
+    private static final LongAdder[] rows = adders(KEYS);
+    private static final LongAdder[] latency = adders(KEYS * BUCKETS);
+    private static final LongAccumulator[] maxLatency = new LongAccumulator[KEYS];
+    private static final LongAdder[] outcomes = adders(KEYS * results.length);
+
+    static {
+        for (int i = 0; i < KEYS; i++)
+            maxLatency[i] = new LongAccumulator(Math::max, 0);
+    }
+
+    /** Columns of {@link #toCursor}; then one "errors_<result>" column per failed result */
+    static final String[] COLUMNS = {
+        "action", "path", "requests", "in_flight", "rows", "errors",
+        "p50_us", "p95_us", "p99_us", "max_us"
+    };
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static int keyOf(@NonNull HistoryToken action, @NonNull PathCode path) {
+        return action.ordinal() * paths.length + path.ordinal();
+    }
+
+    /**
+     * Marks a request as started
+     *
+     * @return Start time, for [end]
+     */
+    static long begin(@NonNull HistoryToken action, @NonNull PathCode path) {
+        inFlight[keyOf(action, path)].increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a request which started at [startNanos], see [begin]
+     *
+     * @param rowCount Rows returned or written
+     */
+    static void end(@NonNull HistoryToken action, @NonNull PathCode path, long startNanos, int rowCount) {
+        long micros = Math.max(0, (System.nanoTime() - startNanos) / 1000);
+        int key = keyOf(action, path);
+        inFlight[key].decrement();
+        requests[key].increment();
+        if (rowCount > 0) rows[key].add(rowCount);
+
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        latency[key * BUCKETS + bucket].increment();
+        maxLatency[key].accumulate(micros);
+    }
+
+    /**
+     * Counts a result, as recorded in the history
+     */
+    static void result(@NonNull HistoryToken action, @NonNull PathCode path, @NonNull HistoryActionToken result) {
+        outcomes[keyOf(action, path) * results.length + result.ordinal()].increment();
+    }
+
+    /**
+     * One row per (action, path) which had a request or a result, see {@link #COLUMNS}.
+     * The extras carry the startup times and the entity cache counts.
+     */
+    @NonNull
+    static Cursor toCursor() {
+        List<String> columns = new ArrayList<>();
+        for (String column : COLUMNS) columns.add(column);
+        for (HistoryActionToken result : results)
+            if (result != HistoryActionToken.OK)
+                columns.add("errors_" + result.name().toLowerCase(Locale.ROOT));
+
+        MatrixCursor cursor = new MatrixCursor(columns.toArray(new String[0]));
+        long[] counts = new long[BUCKETS];
+
+        for (HistoryToken action : actions) {
+            for (PathCode path : paths) {
+                int key = keyOf(action, path);
+                long total = requests[key].sum();
+                long running = inFlight[key].sum();
+
+                long errors = 0;
+                Object[] errorCounts = new Object[results.length - 1];
+                int e = 0;
+                boolean anyResult = false;
+                for (HistoryActionToken result : results) {
+                    long count = outcomes[key * results.length + result.ordinal()].sum();
+                    anyResult |= count > 0;
+                    if (result == HistoryActionToken.OK) continue;
+                    errors += count;
+                    errorCounts[e++] = count;
+                }
+                if (total == 0 && running == 0 && !anyResult) continue;
+
+                for (int b = 0; b < BUCKETS; b++)
+                    counts[b] = latency[key * BUCKETS + b].sum();
+                long max = maxLatency[key].get();
+
+                Object[] row = new Object[columns.size()];
+                row[0] = action.name();
+                row[1] = path.pathName();
+                row[2] = total;
+                row[3] = running;
+                row[4] = rows[key].sum();
+                row[5] = errors;
+                row[6] = percentile(counts, 0.50, max);
+                row[7] = percentile(counts, 0.95, max);
+                row[8] = percentile(counts, 0.99, max);
+                row[9] = max;
+                System.arraycopy(errorCounts, 0, row, COLUMNS.length, errorCounts.length);
+                cursor.addRow(row);
+            }
+        }
+
+        Bundle extras = new Bundle();
+        extras.putLong("first_query_ms", StartupMetrics.firstQueryMillis());
+        extras.putLong("first_query_from_process_ms", StartupMetrics.firstQueryFromProcessMillis());
+        extras.putBoolean("first_query_warm", StartupMetrics.firstQueryWarm());
+        extras.putLong("warm_up_ms", StartupMetrics.warmUpMillis());
+        EntityCache.Stats cache = EntityCache.stats();
+        extras.putLong("cache_hits", cache.hits);
+        extras.putLong("cache_misses", cache.misses);
+        extras.putLong("cache_evictions", cache.evictions);
+        extras.putLong("cache_bytes", cache.sizeBytes);
+        cursor.setExtras(extras);
+        return cursor;
+    }
+
+    /**
+     * Upper bound (microseconds) of the bucket holding the [quantile] of [counts], capped by [max]
+     */
+    private static long percentile(@NonNull long[] counts, double quantile, long max) {
+        long total = 0;
+        for (long count : counts) total += count;
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank)
+                return Math.min(max, b == 0 ? 1 : 1L << b);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,265 @@
+package com.lasley.kts_provider.database;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Single-flight for the full-list queries, which every observer repeats after a change.
+ * <p>
+ * Concurrent requests with the same key share one execution. Its rows are kept as an immutable
+ * snapshot, stamped with the {@link DataGeneration} from before the query ran, and served to
+ * later requests until the generation moves on.
+ * A request never joins a query which started before the latest change.
+ * <p>
+ * Results over {@link #MAX_SHARED_ROWS} aren't kept; the leader gets the query's own cursor,
+ * and each request waiting on it runs its own.
+ */
+class SharedQueries {
+
+    static final int MAX_SHARED_ROWS = 20_000;
+
+    // key -> latest snapshot, and the query running for it
+    private static final Map<String, Snapshot> snapshots = new HashMap<>();
+    private static final Map<String, Flight> flights = new HashMap<>();
+
+    private static class Flight {
+        final long generation;
+        // the snapshot, or null if the leader's rows weren't shared
+        final CompletableFuture<Snapshot> result = new CompletableFuture<>();
+
+        Flight(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Rows of [load] for [key], from the current snapshot, a running query, or a new query.
+     * Each call gets its own cursor over the shared rows.
+     *
+     * @param load Runs the query
+     */
+    @Nullable
+    static Cursor query(@NonNull String key, @NonNull Callable<Cursor> load) {
+        long generation = DataGeneration.current();
+        Flight flight;
+        boolean leader = false;
+
+        synchronized (SharedQueries.class) {
+            Snapshot snapshot = snapshots.get(key);
+            if (snapshot != null && snapshot.generation == generation)
+                return new SnapshotCursor(snapshot);
+
+            flight = flights.get(key);
+            if (flight == null || flight.generation != generation) {
+                flight = new Flight(generation);
+                flights.put(key, flight);
+                leader = true;
+            }
+        }
+        if (leader) return lead(key, flight, load);
+
+        Snapshot snapshot = null;
+        try {
+            snapshot = flight.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // the leader's query failed; this request tries its own
+        }
+        return snapshot == null ? call(load) : new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Runs [load] for the requests which join [flight]
+     */
+    @Nullable
+    private static Cursor lead(
+        @NonNull String key,
+        @NonNull Flight flight,
+        @NonNull Callable<Cursor> load
+    ) {
+        Cursor cursor = null;
+        try {
+            cursor = call(load);
+            if (cursor == null || cursor.getCount() > MAX_SHARED_ROWS) {
+                // too large to keep; the others run their own
+                flight.result.complete(null);
+                return cursor;
+            }
+
+            Snapshot snapshot = copy(cursor, flight.generation);
+            cursor.close();
+            synchronized (SharedQueries.class) {
+                Snapshot kept = snapshots.get(key);
+                if (kept == null || kept.generation < snapshot.generation)
+                    snapshots.put(key, snapshot);
+            }
+            flight.result.complete(snapshot);
+            return new SnapshotCursor(snapshot);
+        } catch (RuntimeException e) {
+            if (cursor != null) cursor.close();
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (SharedQueries.class) {
+                if (flights.get(key) == flight) flights.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the snapshots; they'd be replaced after the next change anyway
+     */
+    static synchronized void clear() {
+        snapshots.clear();
+    }
+
+    @Nullable
+    private static Cursor call(@NonNull Callable<Cursor> load) {
+        try {
+            return load.call();
+        } catch (Exception e) {
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static Snapshot copy(@NonNull Cursor cursor, long generation) {
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int row = 0; cursor.moveToNext(); row++) {
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        values[i] = cursor.getBlob(i);
+                        break;
+                    case Cursor.FIELD_TYPE_NULL:
+                        values[i] = null;
+                        break;
+                    default:
+                        values[i] = cursor.getString(i);
+                        break;
+                }
+            }
+            rows[row] = values;
+        }
+        return new Snapshot(generation, columns, rows);
+    }
+
+    /**
+     * Rows of one query; never modified once built
+     */
+    static class Snapshot {
+        final long generation;
+        final String[] columns;
+        final Object[][] rows;
+
+        Snapshot(long generation, @NonNull String[] columns, @NonNull Object[][] rows) {
+            this.generation = generation;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Read-only cursor over a shared {@link Snapshot}; only its position is its own
+     */
+    static class SnapshotCursor extends AbstractCursor {
+        private final Snapshot snapshot;
+
+        SnapshotCursor(@NonNull Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        private Object value(int column) {
+            return snapshot.rows[getPosition()][column];
+        }
+
+        @Override
+        public int getCount() {
+            return snapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return snapshot.columns;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = value(column);
+            if (value == null) return FIELD_TYPE_NULL;
+            if (value instanceof Long) return FIELD_TYPE_INTEGER;
+            if (value instanceof Double) return FIELD_TYPE_FLOAT;
+            if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = value(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = value(column);
+            if (value == null || value instanceof byte[]) return (byte[]) value;
+            return value.toString().getBytes();
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = value(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).longValue();
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = value(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).doubleValue();
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return value(column) == null;
+        }
+    }
+}
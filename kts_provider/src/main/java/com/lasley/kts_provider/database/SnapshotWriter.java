@@ -0,0 +1,145 @@
+package com.lasley.kts_provider.database;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the whole catalog, for a full sync, through the pipe of
+ * {@link ContentProvider#openPipeHelper}.
+ * <p>
+ * Each record is a type byte, the length of its content (int, big-endian), then the content:
+ * - {@link #RECORD_HEADER}: {"high_water", "tag", "albums", "artists"}; always first
+ * - {@link #RECORD_ARTIST}: artist JSON, as from the "artists" route
+ * - {@link #RECORD_ALBUM}: album JSON, as from the "albums" route
+ * - {@link #RECORD_END}: no content; a stream without it was cut short
+ * <p>
+ * Items are read one keyset page at a time, so neither side holds more than a page.
+ * The snapshot isn't a single transaction; items changed while it's written are in the
+ * change log after "high_water", which the reader sends as "since" next.
+ */
+class SnapshotWriter implements ContentProvider.PipeDataWriter<ContentDatabase> {
+
+    static final String MIME_TYPE = "application/vnd.com.lasley.snapshot";
+
+    static final byte RECORD_HEADER = 'H';
+    static final byte RECORD_ARTIST = 'R';
+    static final byte RECORD_ALBUM = 'A';
+    static final byte RECORD_END = 'E';
+
+    private static final int PAGE_SIZE = DatabaseHelper.MAX_PAGE_SIZE;
+
+    @Override
+    public void writeDataToPipe(
+        @NonNull ParcelFileDescriptor output,
+        @NonNull Uri uri,
+        @NonNull String mimeType,
+        @Nullable Bundle opts,
+        @Nullable ContentDatabase database
+    ) {
+        if (database == null) return;
+        try (DataOutputStream stream = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(output.getFileDescriptor()), 64 * 1024))) {
+            write(database, stream);
+        } catch (IOException e) {
+            // the reader closed the pipe early; nothing else to clean up
+            System.out.println("Snapshot stopped: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // e.g. a failed query; the stream ends without RECORD_END, so the reader falls back
+            // to a full query instead of keeping a partial snapshot, and the provider keeps running
+            System.out.println("Snapshot failed: " + e);
+        }
+    }
+
+    /**
+     * Writes the snapshot of [database] to [stream], see the class docs for the format
+     */
+    static void write(
+        @NonNull ContentDatabase database,
+        @NonNull DataOutputStream stream
+    ) throws IOException {
+        DataDao access = database.dataDao();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+
+        // before any item is read, so the changes made while streaming are after it
+        String tag = DataGeneration.tag();
+        long highWater = Math.max(ChangeLog.floor(access), access.lastChangeSeq());
+        try (JsonWriter writer = recordWriter(record)) {
+            writer.beginObject();
+            writer.name("high_water").value(highWater);
+            writer.name("tag").value(tag);
+            writer.name("albums").value(access.countAlbums());
+            writer.name("artists").value(access.countArtists());
+            writer.endObject();
+        }
+        writeRecord(stream, RECORD_HEADER, record);
+
+        PageToken after = PageToken.START;
+        while (after != null) {
+            try (Cursor page = access.getArtistsPage(after.updatedTime, after.id, PAGE_SIZE)) {
+                writeRows(stream, page, RECORD_ARTIST, record);
+                after = page.getCount() == PAGE_SIZE ? PageToken.lastRowOf(page, "artist_id") : null;
+            }
+        }
+
+        after = PageToken.START;
+        while (after != null) {
+            try (Cursor page = access.getAlbumsPage(after.updatedTime, after.id, PAGE_SIZE)) {
+                writeRows(stream, page, RECORD_ALBUM, record);
+                after = page.getCount() == PAGE_SIZE ? PageToken.lastRowOf(page, "album_id") : null;
+            }
+        }
+
+        stream.writeByte(RECORD_END);
+        stream.writeInt(0);
+        stream.flush();
+    }
+
+    private static void writeRows(
+        @NonNull DataOutputStream stream,
+        @NonNull Cursor rows,
+        byte type,
+        @NonNull ByteArrayOutputStream record
+    ) throws IOException {
+        String[] names = rows.getColumnNames();
+        while (rows.moveToNext()) {
+            try (JsonWriter writer = recordWriter(record)) {
+                ChangeLog.writeRow(writer, rows, names);
+            }
+            writeRecord(stream, type, record);
+        }
+    }
+
+    /**
+     * Clears [record], and returns a writer into it; closing the writer flushes it
+     */
+    private static JsonWriter recordWriter(@NonNull ByteArrayOutputStream record) {
+        record.reset();
+        return new JsonWriter(new OutputStreamWriter(record, StandardCharsets.UTF_8));
+    }
+
+    private static void writeRecord(
+        @NonNull DataOutputStream stream,
+        byte type,
+        @NonNull ByteArrayOutputStream record
+    ) throws IOException {
+        stream.writeByte(type);
+        stream.writeInt(record.size());
+        record.writeTo(stream);
+    }
+}
@@ -0,0 +1,68 @@
+package com.lasley.kts_provider.database;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cold start timings of the provider, for this process.
+ * <p>
+ * - first query: from the provider's creation (and from the process start) until the first
+ * query returned its cursor
+ * - warm-up: time {@link DatabaseHelper#warmUp} took; -1 until it's done
+ * Times are in milliseconds; -1 when not measured yet.
+ */
+public class StartupMetrics {
+
+    private static volatile long createdAt = -1;
+    private static volatile long warmUpMillis = -1;
+    private static volatile long firstQueryMillis = -1;
+    private static volatile long firstQueryFromProcessMillis = -1;
+    // the warm-up was done before the first query
+    private static volatile boolean firstQueryWarm = false;
+
+    private static final AtomicBoolean firstQueryDone = new AtomicBoolean(false);
+
+    static void providerCreated() {
+        createdAt = SystemClock.elapsedRealtime();
+    }
+
+    static void warmedUp(long millis) {
+        warmUpMillis = millis;
+        System.out.println("Provider warm-up: " + millis + " ms");
+    }
+
+    /**
+     * Records the first query of the process; later calls do nothing
+     */
+    static void queryFinished() {
+        if (firstQueryDone.get() || !firstQueryDone.compareAndSet(false, true)) return;
+
+        long now = SystemClock.elapsedRealtime();
+        if (createdAt >= 0) firstQueryMillis = now - createdAt;
+        firstQueryFromProcessMillis = now - Process.getStartElapsedRealtime();
+        firstQueryWarm = warmUpMillis >= 0;
+        System.out.println(
+            "First query: " + firstQueryMillis + " ms after provider start, " +
+                firstQueryFromProcessMillis + " ms after process start" +
+                (firstQueryWarm ? ", warmed up" : ", before warm-up finished")
+        );
+    }
+
+    public static long firstQueryMillis() {
+        return firstQueryMillis;
+    }
+
+    public static long firstQueryFromProcessMillis() {
+        return firstQueryFromProcessMillis;
+    }
+
+    public static boolean firstQueryWarm() {
+        return firstQueryWarm;
+    }
+
+    public static long warmUpMillis() {
+        return warmUpMillis;
+    }
+}
@@ -0,0 +1,92 @@
+package com.lasley.kts_provider;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.lasley.kts_provider.data.HistoryStamp;
+import com.lasley.kts_provider.database.ContentDatabase;
+import com.lasley.kts_provider.database.DataDao;
+import com.lasley.kts_provider.database.HistoryWriter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+public class HistoryWriterTest {
+    private ContentDatabase database;
+    private DataDao dao;
+
+    @Before
+    public void setup() {
+        database = mock(ContentDatabase.class);
+        dao = mock(DataDao.class);
+        when(database.dataDao()).thenReturn(dao);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<HistoryStamp>> batchCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    @Test
+    public void writesInBatches() {
+        HistoryWriter writer = new HistoryWriter(
+            database, 100, 10, 60_000, HistoryWriter.OverflowPolicy.Block
+        );
+
+        for (int i = 0; i < 50; i++)
+            Assert.assertTrue(writer.enqueue(new HistoryStamp()));
+
+        Assert.assertTrue(writer.flush(5000));
+        Assert.assertEquals(0, writer.pendingCount());
+        // 50 events, 10 per transaction
+        ArgumentCaptor<List<HistoryStamp>> batches = batchCaptor();
+        verify(dao, times(5)).appendHistory(batches.capture());
+        for (List<HistoryStamp> batch : batches.getAllValues())
+            Assert.assertEquals(10, batch.size());
+        writer.shutdown(5000);
+    }
+
+    @Test
+    public void countAndDropRejectsWhenFull() {
+        // long window, so nothing leaves the queue until flushed
+        HistoryWriter writer = new HistoryWriter(
+            database, 4, 4, 60_000, HistoryWriter.OverflowPolicy.Count_And_Drop
+        );
+
+        int accepted = 0;
+        for (int i = 0; i < 20; i++)
+            if (writer.enqueue(new HistoryStamp())) accepted++;
+
+        Assert.assertTrue(accepted >= 4);
+        Assert.assertEquals(20 - accepted, writer.droppedCount());
+        writer.shutdown(5000);
+    }
+
+    @Test
+    public void shutdownWritesQueuedEvents() {
+        HistoryWriter writer = new HistoryWriter(
+            database, 100, 100, 60_000, HistoryWriter.OverflowPolicy.Drop_Oldest
+        );
+
+        for (int i = 0; i < 5; i++)
+            writer.enqueue(new HistoryStamp());
+
+        writer.shutdown(5000);
+        Assert.assertEquals(0, writer.pendingCount());
+        Assert.assertFalse(writer.enqueue(new HistoryStamp()));
+
+        ArgumentCaptor<List<HistoryStamp>> batches = batchCaptor();
+        verify(dao, atLeastOnce()).appendHistory(batches.capture());
+        int written = 0;
+        for (List<HistoryStamp> batch : batches.getAllValues())
+            written += batch.size();
+        Assert.assertEquals(5, written);
+    }
+}
@@ -0,0 +1,119 @@
+package com.lasley.kts_provider;
+
+import com.google.gson.Gson;
+import com.lasley.kts_provider.data.Album;
+import com.lasley.kts_provider.data.Artist;
+import com.lasley.kts_provider.data.HistoryStamp;
+import com.lasley.kts_provider.data.JsonCodec;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JsonCodecTest {
+    @Test
+    public void matchesReflectiveGson() {
+        Artist artist = new Artist("Artist 123");
+        Album album = new Album("Album \"123\"", artist);
+
+        // same JSON both ways, so old and new clients read each other's output
+        Gson gson = new Gson();
+        Album fromReflective = JsonCodec.fromJson(gson.toJson(album), Album.class);
+        Album fromCodec = gson.fromJson(JsonCodec.toJson(album), Album.class);
+        Artist artistFromCodec = gson.fromJson(JsonCodec.toJson(artist), Artist.class);
+
+        Assert.assertNotNull(fromReflective);
+        Assert.assertEquals(album.uuid, fromReflective.uuid);
+        Assert.assertEquals(album.name, fromReflective.name);
+        Assert.assertEquals(album.artist, fromReflective.artist);
+        Assert.assertEquals(album.updatedTime, fromReflective.updatedTime);
+
+        Assert.assertEquals(album.uuid, fromCodec.uuid);
+        Assert.assertEquals(album.createdTime, fromCodec.createdTime);
+        Assert.assertEquals(artist.albums, artistFromCodec.albums);
+
+        HistoryStamp step = new HistoryStamp();
+        step.itemID = "1234";
+        step.occurrences = 3;
+        HistoryStamp parsedStep = JsonCodec.fromJson(JsonCodec.toJson(step), HistoryStamp.class);
+        Assert.assertNotNull(parsedStep);
+        Assert.assertEquals("1234", parsedStep.itemID);
+        Assert.assertEquals(3, parsedStep.occurrences);
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndQuotedNumbers() {
+        // cursor rows come through with every value as a string, and extra columns
+        Album album = JsonCodec.fromJson(
+            "{\"album_id\":\"a-b-c-d-e\",\"rowid\":\"7\",\"updatedTime\":\"42\",\"extra\":{\"x\":[1]}}",
+            Album.class
+        );
+        Assert.assertNotNull(album);
+        Assert.assertEquals("a-b-c-d-e", album.uuid);
+        Assert.assertEquals(42, album.updatedTime);
+
+        Assert.assertNull(JsonCodec.fromJson("{not json", Album.class));
+    }
+
+    /**
+     * Micro-benchmark of the previous parse path (a new Gson per call) against the shared codec.
+     * Timings vary by machine, so it only prints them; not part of the default suite,
+     * remove the @Ignore to run it by hand.
+     */
+    @Ignore("benchmark, run by hand")
+    @Test
+    public void benchmarkParse() {
+        Artist artist = new Artist("Artist");
+        List<String> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; i++)
+            batch.add(new Gson().toJson(new Album("Album #" + i, artist)));
+        String single = batch.get(0);
+
+        // warm up both paths
+        for (int i = 0; i < 2_000; i++) {
+            new Gson().fromJson(single, Album.class);
+            JsonCodec.fromJson(single, Album.class);
+        }
+
+        report("single, new Gson()", 1, measure(() -> new Gson().fromJson(single, Album.class)));
+        report("single, JsonCodec", 1, measure(() -> JsonCodec.fromJson(single, Album.class)));
+        report("10k batch, new Gson()", batch.size(), measure(() -> {
+            for (String json : batch) new Gson().fromJson(json, Album.class);
+        }));
+        report("10k batch, JsonCodec", batch.size(), measure(() -> {
+            for (String json : batch) JsonCodec.fromJson(json, Album.class);
+        }));
+    }
+
+    private static final int ROUNDS = 20;
+
+    /**
+     * @return {nanoseconds, bytes allocated (-1 if unknown)} of one run of [body], averaged
+     */
+    private static long[] measure(Runnable body) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) threads : null;
+        long thread = Thread.currentThread().getId();
+
+        long startBytes = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            body.run();
+        long nanos = (System.nanoTime() - start) / ROUNDS;
+        long bytes = allocations == null
+            ? -1 : (allocations.getThreadAllocatedBytes(thread) - startBytes) / ROUNDS;
+        return new long[]{nanos, bytes};
+    }
+
+    private static void report(String name, int items, long[] result) {
+        System.out.println(String.format(
+            "%-24s %10d ns/op %10d B/op (%d items)", name, result[0], result[1], items
+        ));
+    }
+}
@@ -0,0 +1,57 @@
+package com.lasley.kts_provider.database;
+
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryBuilderTest {
+    @Test
+    public void buildsFilteredSortedQuery() {
+        SupportSQLiteQuery query = new QueryBuilder(QueryBuilder.Table.Albums)
+            .project(new String[]{"album_id", "name"})
+            .where("artist_id", "a-b-c-d-e")
+            .select("name PREFIX ? AND updatedTime >= ?", new String[]{"Dark", "1000"})
+            .orderBy("name desc")
+            .build();
+
+        Assert.assertEquals(
+            "SELECT album_id, name FROM _album WHERE artist_id = ? " +
+                "AND name >= ? AND name < ? AND updatedTime >= ? ORDER BY name DESC, album_id",
+            query.getSql()
+        );
+        Assert.assertEquals(4, query.getArgCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOrClause() {
+        new QueryBuilder(QueryBuilder.Table.Artists)
+            .select("name = ? OR 1 = 1", new String[]{"x"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownColumn() {
+        // an album column, but not an artist one
+        new QueryBuilder(QueryBuilder.Table.Artists)
+            .select("album_id = ?", new String[]{"a-b-c-d-e"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLike() {
+        // would match case-insensitively in SQLite; PREFIX is the supported form
+        new QueryBuilder(QueryBuilder.Table.Artists)
+            .select("name LIKE ?", new String[]{"dark%"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPrefixOnID() {
+        new QueryBuilder(QueryBuilder.Table.Albums)
+            .select("artist_id PREFIX ?", new String[]{"a-b"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownSort() {
+        new QueryBuilder(QueryBuilder.Table.Albums)
+            .orderBy("album_ids");
+    }
+}
@@ -17,6 +17,12 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // album list read a page at a time from the provider; opt in with -PpagedAlbums=true
+        buildConfigField(
+            "boolean", "PAGED_ALBUMS",
+            (project.findProperty("pagedAlbums") ?: "false").toString()
+        )
     }
 
     buildTypes {
@@ -0,0 +1,64 @@
+package com.lasley.kts_viewer
+
+import android.database.Cursor
+import android.database.MatrixCursor
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.lasley.kts_viewer.data.Album
+import com.lasley.kts_viewer.helpers.toAlbumSeq
+import com.lasley.kts_viewer.helpers.toObjSeq
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.UUID
+
+/**
+ * Album rows mapped through cursor -> JSON -> Gson, against the typed row reader.
+ * Prints the time per row and the throughput of each; check the output with `adb logcat`.
+ */
+@RunWith(AndroidJUnit4::class)
+class CursorMappingBenchmark {
+    private val rows = 100_000
+    private val columns = arrayOf("album_id", "name", "artist_id", "createdTime", "updatedTime")
+
+    private fun albumCursor(): Cursor {
+        val artist = UUID.randomUUID().toString()
+        return MatrixCursor(columns, rows).apply {
+            for (i in 0 until rows)
+                addRow(arrayOf<Any>(UUID.randomUUID().toString(), "Album #$i", artist, i.toLong(), i * 2L))
+        }
+    }
+
+    private fun measure(label: String, cursor: Cursor, map: (Cursor) -> List<Album>): List<Album> {
+        // warm-up, so both paths are compiled before they're timed
+        map(cursor)
+
+        var result = emptyList<Album>()
+        val runs = 3
+        val start = System.nanoTime()
+        repeat(runs) { result = map(cursor) }
+        val elapsed = System.nanoTime() - start
+
+        val nsPerRow = elapsed / (runs * rows.toLong())
+        val rowsPerSecond = runs * rows * 1_000_000_000L / elapsed
+        println("$label: $nsPerRow ns/row, $rowsPerSecond rows/s ($rows rows)")
+        return result
+    }
+
+    @Test
+    fun mapAlbums() {
+        albumCursor().use { cursor ->
+            val json = measure("cursor -> JSON -> Gson", cursor) { it.toObjSeq<Album>().toList() }
+            val typed = measure("typed row reader", cursor) { it.toAlbumSeq().toList() }
+
+            assertEquals(rows, json.size)
+            assertEquals(rows, typed.size)
+            for (i in 0 until rows step 997) {
+                assertEquals(json[i].uuid, typed[i].uuid)
+                assertEquals(json[i].name, typed[i].name)
+                assertEquals(json[i].artistID, typed[i].artistID)
+                assertEquals(json[i].createdTime, typed[i].createdTime)
+                assertEquals(json[i].updatedTime, typed[i].updatedTime)
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package com.github.nitrico.lastadapter
 
+import android.os.Looper
 import android.view.LayoutInflater
 import android.view.ViewGroup
 import androidx.databinding.DataBindingUtil
@@ -27,8 +28,12 @@ import androidx.databinding.ViewDataBinding
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.findViewTreeLifecycleOwner
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import kotlin.contracts.ExperimentalContracts
 import kotlin.reflect.KClass
 
@@ -170,15 +175,19 @@ class LastAdapter(
 
             field = castValue
             recyclerView?.findViewTreeLifecycleOwner()?.also { lifecycle ->
-                castValue?.observe(lifecycle) {
-                    dataList = it
-                    notifyDataSetChanged()
-                }
+                castValue?.observe(lifecycle) { submitList(it) }
             }
         }
 
     private var dynamicList: (() -> List<Any>)? = null
 
+    private var differ: Differ? = null
+    // increased for each new [liveList] value; a diff for an older value is dropped
+    @Volatile
+    private var diffGeneration = 0
+    private var pendingDiff: Future<*>? = null
+    private val mainHandler = android.os.Handler(Looper.getMainLooper())
+
     private val DATA_INVALIDATION = Any()
     private val callback = ObservableListCallback(this)
     private var recyclerView: RecyclerView? = null
@@ -401,6 +410,29 @@ class LastAdapter(
             override fun getItemType(item: Any, position: Int) = find(item, position)
         })
 
+    /**
+     * Diffs each new [liveList] value against the shown list in the background, then notifies
+     * only the rows which were inserted, removed, moved or changed.
+     * Without this, every value rebinds every row.
+     *
+     * A diff still running when a newer value arrives is dropped.
+     *
+     * @param keyOf Identity of an item; by default its [StableId], otherwise the item itself
+     * @param sameContent True if the row of [keyOf]-equal items would look the same
+     *
+     * **Example**
+     * ```kotlin
+     * LastAdapter(liveData, BR.item)
+     *   .map<Point>(R.layout.item_point)
+     *   .diffing(keyOf = { (it as Point).id })
+     *   .into(recyclerView)
+     * ```
+     */
+    fun diffing(
+        keyOf: (Any) -> Any? = { (it as? StableId)?.stableId ?: it },
+        sameContent: (Any, Any) -> Boolean = { old, new -> old == new }
+    ) = apply { differ = Differ(keyOf, sameContent) }
+
     /**
      * Location of where this adapter will be applied.
      *
@@ -412,6 +444,37 @@ class LastAdapter(
         recyclerView.adapter = this
     }
 
+    /**
+     * Shows [list]; see [diffing]
+     */
+    private fun submitList(list: List<Any>) {
+        val differ = differ
+        if (differ == null) {
+            dataList = list
+            notifyDataSetChanged()
+            return
+        }
+
+        val generation = ++diffGeneration
+        val old = dataList
+        // a queued diff is stale now; one which is running is dropped when it's done
+        pendingDiff?.cancel(false)
+        pendingDiff = diffExecutor.submit(Runnable {
+            if (generation != diffGeneration) return@Runnable
+            val result = DiffUtil.calculateDiff(differ.callback(old, list), true)
+
+            mainHandler.post {
+                if (generation != diffGeneration) return@post
+                val changedElsewhere = dataList !== old
+                dataList = list
+                if (changedElsewhere)
+                    notifyDataSetChanged()
+                else
+                    result.dispatchUpdatesTo(this)
+            }
+        })
+    }
+
     override fun onCreateViewHolder(view: ViewGroup, viewType: Int): Holder<ViewDataBinding> {
         val inflater = LayoutInflater.from(view.context)
         val binding = DataBindingUtil.inflate<ViewDataBinding>(inflater, viewType, view, false)
@@ -491,10 +554,7 @@ class LastAdapter(
         recyclerView = rv
         rv.findViewTreeLifecycleOwner()?.also { lifecycle ->
             @Suppress("UNCHECKED_CAST")
-            (liveList as? MutableLiveData<List<Any>>)?.observe(lifecycle) {
-                dataList = it
-                notifyDataSetChanged()
-            }
+            (liveList as? MutableLiveData<List<Any>>)?.observe(lifecycle) { submitList(it) }
         }
     }
 
@@ -567,4 +627,29 @@ class LastAdapter(
             }
         }
     }
+
+    private class Differ(
+        val keyOf: (Any) -> Any?,
+        val sameContent: (Any, Any) -> Boolean
+    ) {
+        fun callback(old: List<Any>, new: List<Any>) = object : DiffUtil.Callback() {
+            override fun getOldListSize() = old.size
+            override fun getNewListSize() = new.size
+
+            override fun areItemsTheSame(oldPosition: Int, newPosition: Int) =
+                keyOf(old[oldPosition]) == keyOf(new[newPosition])
+
+            override fun areContentsTheSame(oldPosition: Int, newPosition: Int) =
+                sameContent(old[oldPosition], new[newPosition])
+        }
+    }
+
+    private companion object {
+        // one thread for every adapter; diffs are short, and only the latest of each matters
+        val diffExecutor: ExecutorService by lazy {
+            Executors.newSingleThreadExecutor { runnable ->
+                Thread(runnable, "LastAdapter-diff").apply { isDaemon = true }
+            }
+        }
+    }
 }
@@ -16,16 +16,29 @@ import com.lasley.kts_viewer.data.LocalDatabase
 import com.lasley.kts_viewer.data.ProviderPaths
 import com.lasley.kts_viewer.data.SaveResult
 import com.lasley.kts_viewer.extensions.toJson
+import com.lasley.kts_viewer.helpers.AlbumPager
+import com.lasley.kts_viewer.helpers.ChangeReconciler
 import com.lasley.kts_viewer.helpers.ContentResolverHelper
-import com.lasley.kts_viewer.helpers.toObjSeq
+import com.lasley.kts_viewer.helpers.readSnapshot
+import com.lasley.kts_viewer.helpers.toAlbumSeq
+import com.lasley.kts_viewer.helpers.toArtistSeq
 import com.lasley.kts_viewer.helpers.tryOrNull
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import org.jetbrains.annotations.TestOnly
 
 class ActivityViewModel(context: Application) : AndroidViewModel(context) {
 
+    /**
+     * True: the album list is read a page at a time, through [albumPager], and [LocalDatabase]
+     * only keeps the artists. False (default): every album is loaded, into [liveAlbumData].
+     * Set at build time, with the "pagedAlbums" Gradle property
+     */
+    val pagedAlbums = BuildConfig.PAGED_ALBUMS
+
     val liveAlbumData = MutableLiveData<List<Album>>()
     val reloadReady = MutableLiveData<Boolean>()
 
@@ -33,18 +46,13 @@ class ActivityViewModel(context: Application) : AndroidViewModel(context) {
      * Collection of (Artist names, UUID), sorted alphabetically
      */
     val artists: List<Pair<String, String>>
-        get() = LocalDatabase.values.asSequence()
-            .filterIsInstance<Artist>().map { it.name to it.uuid }.toList()
-            .sortedBy { it.first }
+        get() = LocalDatabase.snapshot().artistsByName.map { it.name to it.uuid }
 
     /**
      * Collection of albums, sorted by time updated
      */
     val albums: List<Album>
-        get() = LocalDatabase.values.asSequence()
-            .filterIsInstance<Album>().toList()
-            .sortedBy { it.updatedTime }
-//            .sortedBy { it.name }.sortedBy { it.artistName }
+        get() = LocalDatabase.snapshot().albumsByUpdated
 
     private val appContext: Application
         get() = getApplication()
@@ -55,6 +63,18 @@ class ActivityViewModel(context: Application) : AndroidViewModel(context) {
     val resolverExists: Boolean
         get() = Constants.providerExists(appContext)
 
+    // tag of the loaded data, see [isModified]
+    @Volatile
+    private var dataTag: String? = null
+
+    private val reconciler = ChangeReconciler(contentResolver, storeAlbums = !pagedAlbums)
+    private val syncLock = Mutex()
+
+    /**
+     * Album list, a page at a time; see [pagedAlbums]
+     */
+    val albumPager = AlbumPager(contentResolver)
+
     @TestOnly
     var resolverHelper: ContentResolverHelper = ContentResolverHelper(contentResolver)
 
@@ -72,24 +92,33 @@ class ActivityViewModel(context: Application) : AndroidViewModel(context) {
             })
     }
 
+    override fun onCleared() {
+        albumPager.close()
+    }
+
+    /**
+     * Brings the local data up to date; through the change log when it can, so only the changed
+     * items are transferred, otherwise with a full reload.
+     * The album list is only re-posted (or its shown pages read again) if something changed.
+     */
     fun loadData(onFinish: () -> Unit = {}) {
-        LocalDatabase.clearData()
         viewModelScope.launch(Dispatchers.IO) {
-            val albums = contentResolver.query(
-                ProviderPaths.Albums.uri, null, null, null, null
-            )?.use { it.toObjSeq<Album>().toList() }.orEmpty()
-
-            albums.map { it.uuid to it }.forEach {
-                LocalDatabase.update(it.first, it.second)
+            syncLock.withLock {
+                val changes = syncChanges()
+                if (changes == null) {
+                    // first load, or the change log can't be used; a known position means a resync
+                    if (reconciler.highWater != null || isModified()) {
+                        reloadAll()
+                        if (pagedAlbums) albumPager.refresh()
+                        else liveAlbumData.postValue(albums)
+                    }
+                } else if (!changes.isEmpty) {
+                    // only the pages holding the changed albums are read again
+                    if (pagedAlbums) albumPager.refresh(changes)
+                    else liveAlbumData.postValue(albums)
+                }
             }
 
-            contentResolver.query(
-                ProviderPaths.Artists.uri, null, null, null, null
-            )?.use { it.toObjSeq<Artist>().toList() }.orEmpty()
-                .map { it.uuid to it }
-                .forEach { LocalDatabase.update(it.first, it.second) }
-
-            liveAlbumData.postValue(albums)
             withContext(Dispatchers.Main) {
                 onFinish()
                 reloadReady.postValue(false)
@@ -97,6 +126,90 @@ class ActivityViewModel(context: Application) : AndroidViewModel(context) {
         }
     }
 
+    /**
+     * Applies the changes since the last sync
+     *
+     * @return The applied changes (empty if nothing changed), or null if the data needs a full reload
+     */
+    private fun syncChanges(): ChangeReconciler.ChangeSet? {
+        val pull = reconciler.pull() ?: return null
+        val changes = reconciler.apply(pull)
+        pull.tag?.also { dataTag = it }
+        return changes
+    }
+
+    /**
+     * Asks the provider if anything changed since the last load; only a few bytes when nothing did.
+     *
+     * @return true if the data should be reloaded
+     */
+    private fun isModified(): Boolean {
+        val tag = dataTag ?: return true
+        val notModified = tryOrNull {
+            contentResolver.query(
+                ProviderPaths.AlbumsIfModified(tag).uri, null, null, null, null
+            )?.use { it.extras.getBoolean(ProviderPaths.EXTRA_NOT_MODIFIED) }
+        }
+        return notModified != true
+    }
+
+    /**
+     * Replaces the local data with the provider's whole catalog; only the artists with [pagedAlbums]
+     */
+    private fun reloadAll() {
+        LocalDatabase.clearData()
+        reconciler.highWater = null
+        if (pagedAlbums) {
+            // only the artists; the album pages are read again as they're shown
+            val position = reconciler.position()
+            dataTag = loadByQuery(withAlbums = false)
+            reconciler.highWater = position
+            return
+        }
+
+        // one sequential stream; items are stored as they arrive
+        val snapshot = contentResolver.readSnapshot { item ->
+            LocalDatabase.update(item.uuid, item)
+        }
+        if (snapshot != null) {
+            dataTag = snapshot.tag
+            reconciler.highWater = snapshot.highWater
+        } else {
+            LocalDatabase.clearData()
+            dataTag = loadByQuery()
+        }
+    }
+
+    /**
+     * Full load through the album and artist queries, for when the snapshot is unavailable
+     *
+     * @param withAlbums false to only load the artists
+     * @return The data tag of the loaded items
+     */
+    private fun loadByQuery(withAlbums: Boolean = true): String? {
+        var tag: String? = null
+        if (withAlbums)
+            contentResolver.query(
+                ProviderPaths.Albums.uri, null, null, null, null
+            )?.use {
+                // the older of the two tags, so a change between the queries still reloads
+                tag = it.extras.getString(ProviderPaths.EXTRA_TAG)
+                it.toAlbumSeq().toList()
+            }.orEmpty()
+                .map { it.uuid to it }
+                .forEach { LocalDatabase.update(it.first, it.second) }
+
+        contentResolver.query(
+            ProviderPaths.Artists.uri, null, null, null, null
+        )?.use {
+            if (tag == null) tag = it.extras.getString(ProviderPaths.EXTRA_TAG)
+            it.toArtistSeq().toList()
+        }.orEmpty()
+            .map { it.uuid to it }
+            .forEach { LocalDatabase.update(it.first, it.second) }
+        return tag
+    }
+
     fun addData(
         newData: CommonInf,
         results: (SaveResult, String) -> Unit
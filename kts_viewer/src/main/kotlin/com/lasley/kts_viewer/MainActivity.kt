@@ -28,12 +28,15 @@ import com.lasley.kts_viewer.databinding.ActivityMainBinding
 import com.lasley.kts_viewer.databinding.AddalbumDialogBinding
 import com.lasley.kts_viewer.databinding.AddartistDialogBinding
 import com.lasley.kts_viewer.databinding.ConfigDataBinding
+import com.lasley.kts_viewer.databinding.ContentPlaceholderBinding
 import com.lasley.kts_viewer.databinding.ContentViewBinding
 import com.lasley.kts_viewer.extensions.showWithLifecycle
+import com.lasley.kts_viewer.helpers.AlbumPager
 import com.lasley.kts_viewer.helpers.BindingDialog
 import com.lasley.kts_viewer.helpers.cast
 import com.lasley.kts_viewer.helpers.collapse
 import com.lasley.kts_viewer.helpers.expand
+import java.util.concurrent.ConcurrentHashMap
 
 class MainActivity : AppCompatActivity() {
 
@@ -42,10 +45,17 @@ class MainActivity : AppCompatActivity() {
 
     private val viewModel: ActivityViewModel by viewModels()
 
-    private val adapter by lazy { LastAdapter(viewModel.liveAlbumData, BR.item) }
+    private val adapter by lazy {
+        if (viewModel.pagedAlbums) LastAdapter(viewModel.albumPager.list, BR.item)
+        else LastAdapter(viewModel.liveAlbumData, BR.item)
+    }
     private val rootContext: Context
         get() = this
 
+    // album ID -> artist name as last bound; the name is looked up live, so the diff compares
+    // against what the row shows
+    private val shownArtistNames = ConcurrentHashMap<String, String>()
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         binding = ActivityMainBinding.inflate(layoutInflater, null, false)
@@ -60,14 +70,14 @@ class MainActivity : AppCompatActivity() {
             binding.loadingText.visibility = View.VISIBLE
             binding.loadingSpinner.visibility = View.VISIBLE
 
+            // the first page shows without waiting for the rest of the data
+            if (viewModel.pagedAlbums) showPagedAlbums()
+
             viewModel.loadData {
                 binding.loadingText.visibility = View.GONE
                 binding.loadingSpinner.visibility = View.GONE
-                binding.contents.visibility = View.VISIBLE
 
-                adapter.map<Album, ContentViewBinding>(R.layout.content_view) {
-                    onBind { contentController(it.bindingAdapterPosition, it.binding) }
-                }.into(binding.contents)
+                if (!viewModel.pagedAlbums) showAlbums()
             }
         }
 
@@ -86,6 +96,56 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    override fun onDestroy() {
+        // the pager outlives the activity, in the view model
+        viewModel.albumPager.listener = null
+        super.onDestroy()
+    }
+
+    private fun showAlbums() {
+        binding.contents.visibility = View.VISIBLE
+        adapter.map<Album, ContentViewBinding>(R.layout.content_view) {
+            onBind {
+                it.binding.item?.also { album -> shownArtistNames[album.uuid] = album.artistName }
+                contentController(it.bindingAdapterPosition, it.binding)
+            }
+        }.diffing(
+            keyOf = { (it as Album).uuid },
+            // Album's equals only covers the constructor fields; a renamed artist changes the row too
+            sameContent = { old, new ->
+                new as Album
+                old == new && (old as Album).updatedTime == new.updatedTime &&
+                    shownArtistNames[new.uuid].let { it == null || it == new.artistName }
+            }
+        ).into(binding.contents)
+    }
+
+    /**
+     * Album list read a page at a time; each bound row (loaded or not) loads the pages around it
+     */
+    private fun showPagedAlbums() {
+        val pager = viewModel.albumPager
+        pager.listener = object : AlbumPager.Listener {
+            override fun onChanged(start: Int, count: Int) =
+                adapter.notifyItemRangeChanged(start, count)
+
+            override fun onResized(size: Int) = adapter.notifyDataSetChanged()
+        }
+
+        binding.contents.visibility = View.VISIBLE
+        adapter.map<Album, ContentViewBinding>(R.layout.content_view) {
+            onBind {
+                pager.loadAround(it.bindingAdapterPosition)
+                contentController(it.bindingAdapterPosition, it.binding)
+            }
+        }.map<AlbumPager.Placeholder, ContentPlaceholderBinding>(R.layout.content_placeholder) {
+            onBind { pager.loadAround(it.bindingAdapterPosition) }
+        }.into(binding.contents)
+
+        // nothing is bound until the first page gives the list a size
+        pager.loadAround(0)
+    }
+
     override fun onCreateOptionsMenu(menu: Menu?): Boolean {
         menuInflater.inflate(R.menu.homepage, menu)
         return super.onCreateOptionsMenu(menu)
@@ -400,10 +460,8 @@ class MainActivity : AppCompatActivity() {
                         SaveResult.Success -> {
                             layoutEdit.background = ColorDrawable(ActionColor.Edit.color)
                             layoutEdit.collapse {
-                                layoutControls.collapse {
-//                                    val itemIndex = viewModel.listCache.indexOf(bindingItem)
-                                    adapter.notifyItemRemoved(dataIndex)
-                                }
+                                // the adapter removes the row when the new list is diffed
+                                layoutControls.collapse()
                             }
                         }
 
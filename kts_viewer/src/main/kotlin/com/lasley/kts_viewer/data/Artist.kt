@@ -12,7 +12,7 @@ data class Artist(
 
     @SerializedName("album_ids")
     var albumIDs = ""
-        private set
+        internal set
 
     val albums: List<Album>
         get() = albumID_List.mapNotNull { LocalDatabase[it] as? Album }
@@ -1,7 +1,6 @@
 package com.lasley.kts_viewer.data
 
 import android.content.ContentValues
-import com.google.gson.Gson
 import com.google.gson.annotations.SerializedName
 import com.lasley.kts_viewer.extensions.toJson
 import java.util.UUID
@@ -9,10 +8,11 @@ import java.util.UUID
 abstract class CommonInf {
     abstract var uuid: String
 
+    // set directly only when decoding, see JsonCodec
     var createdTime: Long = 0
-        private set
+        internal set
     var updatedTime: Long = 0
-        private set
+        internal set
 
     val dataType: String
         get() = when (this) {
@@ -24,7 +24,7 @@ abstract class CommonInf {
     val toContentValues: ContentValues
         get() {
             val values = ContentValues()
-            Gson().toJsonTree(this).asJsonObject.asMap()
+            JsonCodec.gson.toJsonTree(this).asJsonObject.asMap()
                 .mapValues { it.value.toString() }
                 .filter { it.value.isEmpty() }.toMutableMap()
                 .forEach { values.put(it.key, it.value) }
@@ -0,0 +1,100 @@
+package com.lasley.kts_viewer.data
+
+import com.google.gson.Gson
+import com.google.gson.GsonBuilder
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+
+/**
+ * Shared JSON codec for [Album] and [Artist].
+ *
+ * The adapters stream fields straight between the JSON and the object, without reflection or an
+ * intermediate tree; the field names match the provider's. Unknown fields are skipped, and
+ * missing fields keep the object's defaults. [gson] is thread-safe, and is meant to be reused.
+ */
+object JsonCodec {
+
+    val gson: Gson = GsonBuilder()
+        .registerTypeAdapter(Album::class.java, AlbumAdapter.nullSafe())
+        .registerTypeAdapter(Artist::class.java, ArtistAdapter.nullSafe())
+        .create()
+
+    private fun JsonReader.nextStringOrNull(): String? {
+        if (peek() == JsonToken.NULL) {
+            nextNull()
+            return null
+        }
+        return nextString()
+    }
+
+    private object AlbumAdapter : TypeAdapter<Album>() {
+        override fun write(writer: JsonWriter, album: Album) {
+            writer.beginObject()
+            writer.name("album_id").value(album.uuid)
+            album.name?.also { writer.name("name").value(it) }
+            writer.name("artist_id").value(album.artistID)
+            writer.name("createdTime").value(album.createdTime)
+            writer.name("updatedTime").value(album.updatedTime)
+            writer.endObject()
+        }
+
+        override fun read(reader: JsonReader): Album {
+            var uuid: String? = null
+            var name: String? = null
+            var artistID = ""
+            var createdTime: Long? = null
+            var updatedTime: Long? = null
+
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    "album_id" -> uuid = reader.nextStringOrNull()
+                    "name" -> name = reader.nextStringOrNull()
+                    "artist_id" -> artistID = reader.nextStringOrNull().orEmpty()
+                    "createdTime" -> createdTime = reader.nextLong()
+                    "updatedTime" -> updatedTime = reader.nextLong()
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+
+            return Album(name, artistID).apply {
+                uuid?.also { this.uuid = it }
+                createdTime?.also { this.createdTime = it }
+                updatedTime?.also { this.updatedTime = it }
+            }
+        }
+    }
+
+    private object ArtistAdapter : TypeAdapter<Artist>() {
+        override fun write(writer: JsonWriter, artist: Artist) {
+            writer.beginObject()
+            writer.name("name").value(artist.name)
+            writer.name("artist_id").value(artist.uuid)
+            writer.name("album_ids").value(artist.albumIDs)
+            writer.name("createdTime").value(artist.createdTime)
+            writer.name("updatedTime").value(artist.updatedTime)
+            writer.endObject()
+        }
+
+        override fun read(reader: JsonReader): Artist {
+            val artist = Artist()
+
+            reader.beginObject()
+            while (reader.hasNext()) {
+                when (reader.nextName()) {
+                    "artist_id" -> reader.nextStringOrNull()?.also { artist.uuid = it }
+                    "name" -> artist.name = reader.nextStringOrNull().orEmpty()
+                    "album_ids" -> artist.albumIDs = reader.nextStringOrNull().orEmpty()
+                    "createdTime" -> artist.createdTime = reader.nextLong()
+                    "updatedTime" -> artist.updatedTime = reader.nextLong()
+                    else -> reader.skipValue()
+                }
+            }
+            reader.endObject()
+            return artist
+        }
+    }
+}
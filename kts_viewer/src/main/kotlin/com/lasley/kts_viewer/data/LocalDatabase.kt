@@ -1,68 +1,208 @@
-@file:Suppress("UNCHECKED_CAST")
-
 package com.lasley.kts_viewer.data
 
+import java.util.TreeMap
+
+/**
+ * Local copy of the provider's albums and artists.
+ *
+ * Writes go through one lock; each table, the artist -> albums index and the sorted views are
+ * kept up to date per item (O(log n)), so nothing is re-sorted.
+ * Readers get an immutable [Snapshot]; it's published once per change (O(n), on the first read
+ * after the change) and shared until the next one.
+ */
 object LocalDatabase {
-    private val data = mutableMapOf<String, Any>()
 
-    val values: List<Any>
-        get() = data.values.toList()
+    /**
+     * Immutable state of the store, as of one point in time
+     */
+    class Snapshot internal constructor(
+        val albums: Map<String, Album>,
+        val artists: Map<String, Artist>,
+        /** Oldest update first */
+        val albumsByUpdated: List<Album>,
+        val albumsByName: List<Album>,
+        /** By artist name, then album name */
+        val albumsByArtistName: List<Album>,
+        val artistsByName: List<Artist>,
+        private val artistAlbums: Map<String, List<String>>
+    ) {
+        operator fun get(key: String?): CommonInf? {
+            if (key == null) return null
+            return albums[key] ?: artists[key]
+        }
 
-    fun clearData() {
-        data.clear()
+        /**
+         * Albums which name [artistID] as their artist
+         */
+        fun albumsOf(artistID: String): List<Album> =
+            artistAlbums[artistID].orEmpty().mapNotNull { albums[it] }
     }
 
-    operator fun get(key: String?): Any? {
-        return if (key == null) null else data[key]
+    /**
+     * Sort position of an item; ties are ordered by the item ID, so every key is unique
+     */
+    private data class SortKey(
+        val time: Long = 0,
+        val first: String = "",
+        val second: String = "",
+        val id: String
+    ) : Comparable<SortKey> {
+        override fun compareTo(other: SortKey): Int {
+            return compareValuesBy(this, other, { it.time }, { it.first }, { it.second }, { it.id })
+        }
     }
 
     /**
-     * Registers [content] at key [id]
-     *
-     * @param duplicateStrategy Used to determine if [content] (in some way) already exists in [data].
-     * @return [id] if the add was a success, or the duplicate key as found from [duplicateStrategy].
-     * - Note: content won't be added if a duplicate was found
+     * Where an album sits in each sorted view, as it was when stored; items are mutable,
+     * so the keys are kept rather than recomputed on removal
      */
-    fun <T : Any> register(
-        id: String,
-        content: T,
-        duplicateStrategy: (input: T, db: T) -> Boolean = { _, _ -> false }
-    ): String {
-        if (data.containsKey(id)) return id
-        val dupValueKey = data
-            .filter { (it.value as? T) != null }
-            .firstNotNullOfOrNull {
-                if (duplicateStrategy(content, it.value as T))
-                    it.key else null
-            }
+    private class AlbumKeys(val updated: SortKey, val name: SortKey, var artistName: SortKey)
+
+    private val lock = Any()
 
-        if (dupValueKey != null) return dupValueKey
+    private val albums = HashMap<String, Album>()
+    private val artists = HashMap<String, Artist>()
+    // artist ID -> IDs of the albums which name it
+    private val artistAlbums = HashMap<String, MutableSet<String>>()
+
+    private val albumsByUpdated = TreeMap<SortKey, Album>()
+    private val albumsByName = TreeMap<SortKey, Album>()
+    private val albumsByArtistName = TreeMap<SortKey, Album>()
+    private val artistsByName = TreeMap<SortKey, Artist>()
+
+    private val albumKeys = HashMap<String, AlbumKeys>()
+    // artist ID -> its key in [artistsByName]
+    private val artistKeys = HashMap<String, SortKey>()
+
+    @Volatile
+    private var published: Snapshot? = null
+
+    /**
+     * Current state; the same instance until the next change
+     */
+    fun snapshot(): Snapshot {
+        published?.also { return it }
+        synchronized(lock) {
+            return published ?: Snapshot(
+                albums = HashMap(albums),
+                artists = HashMap(artists),
+                albumsByUpdated = albumsByUpdated.values.toList(),
+                albumsByName = albumsByName.values.toList(),
+                albumsByArtistName = albumsByArtistName.values.toList(),
+                artistsByName = artistsByName.values.toList(),
+                artistAlbums = artistAlbums.mapValues { it.value.toList() }
+            ).also { published = it }
+        }
+    }
+
+    /**
+     * Looks up one item in the live tables; doesn't publish a snapshot
+     */
+    operator fun get(key: String?): CommonInf? {
+        if (key == null) return null
+        synchronized(lock) { return albums[key] ?: artists[key] }
+    }
 
-        data[id] = content
-        return id
+    fun clearData() {
+        synchronized(lock) {
+            albums.clear()
+            artists.clear()
+            artistAlbums.clear()
+            albumsByUpdated.clear()
+            albumsByName.clear()
+            albumsByArtistName.clear()
+            artistsByName.clear()
+            albumKeys.clear()
+            artistKeys.clear()
+            published = null
+        }
     }
 
     /**
-     * Returns [content] if it can be registered, or the active content which is registered.
+     * Adds [item] at key [id], or replaces the item there
      */
-    fun <T> canRegisterOrDefault(
-        id: String,
-        content: T,
-        duplicateStrategy: (input: T, db: T) -> Boolean = { _, _ -> false }
-    ): T {
-        if (data.containsKey(id)) return data[id] as T
-        val dupValue = data
-            .filter { (it.value as? T) != null }
-            .firstNotNullOfOrNull {
-                if (duplicateStrategy(content, it.value as T))
-                    (it.value as T) else null
+    fun update(id: String, item: CommonInf) {
+        synchronized(lock) {
+            when (item) {
+                is Album -> putAlbum(id, item)
+                is Artist -> putArtist(id, item)
+                else -> return
             }
-        return dupValue ?: content
+            published = null
+        }
+    }
+
+    /**
+     * @return true if an item was removed
+     */
+    fun remove(id: String): Boolean {
+        synchronized(lock) {
+            val removed = removeAlbum(id) || removeArtist(id)
+            if (removed) published = null
+            return removed
+        }
+    }
+
+    private fun putAlbum(id: String, album: Album) {
+        removeAlbum(id)
+        albums[id] = album
+        artistAlbums.getOrPut(album.artistID) { LinkedHashSet() }.add(id)
+
+        val keys = AlbumKeys(
+            updated = SortKey(time = album.updatedTime, id = id),
+            name = SortKey(first = album.name.orEmpty(), id = id),
+            artistName = artistNameKey(id, album, artists[album.artistID]?.name.orEmpty())
+        )
+        albumKeys[id] = keys
+        albumsByUpdated[keys.updated] = album
+        albumsByName[keys.name] = album
+        albumsByArtistName[keys.artistName] = album
+    }
+
+    private fun removeAlbum(id: String): Boolean {
+        val album = albums.remove(id) ?: return false
+        artistAlbums[album.artistID]?.also {
+            it.remove(id)
+            if (it.isEmpty()) artistAlbums.remove(album.artistID)
+        }
+
+        albumKeys.remove(id)?.also {
+            albumsByUpdated.remove(it.updated)
+            albumsByName.remove(it.name)
+            albumsByArtistName.remove(it.artistName)
+        }
+        return true
+    }
+
+    private fun putArtist(id: String, artist: Artist) {
+        artists[id] = artist
+        val key = SortKey(first = artist.name, id = id)
+        val previous = artistKeys.put(id, key)
+        previous?.also { artistsByName.remove(it) }
+        artistsByName[key] = artist
+
+        // the artist's albums move in the "by artist name" view
+        if (previous?.first != artist.name)
+            rekeyArtistAlbums(id, artist.name)
+    }
+
+    private fun removeArtist(id: String): Boolean {
+        artists.remove(id) ?: return false
+        artistKeys.remove(id)?.also { artistsByName.remove(it) }
+        rekeyArtistAlbums(id, "")
+        return true
     }
 
-    fun remove(id: String) = data.remove(id) != null
+    private fun artistNameKey(id: String, album: Album, artistName: String) =
+        SortKey(first = artistName, second = album.name.orEmpty(), id = id)
 
-    fun update(id: String, newData: Any) {
-        data[id] = newData
+    private fun rekeyArtistAlbums(artistID: String, artistName: String) {
+        artistAlbums[artistID]?.forEach { albumID ->
+            val album = albums[albumID] ?: return@forEach
+            val keys = albumKeys[albumID] ?: return@forEach
+            albumsByArtistName.remove(keys.artistName)
+            keys.artistName = artistNameKey(albumID, album, artistName)
+            albumsByArtistName[keys.artistName] = album
+        }
     }
-}
\ No newline at end of file
+}
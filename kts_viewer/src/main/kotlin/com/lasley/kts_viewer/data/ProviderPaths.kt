@@ -7,6 +7,15 @@ sealed class ProviderPaths {
     companion object {
         val contentRoot: String
             get() = "content://${Constants.providerID}"
+
+        // cursor extras of the provider's queries
+        const val EXTRA_TAG = "tag"
+        const val EXTRA_NOT_MODIFIED = "not_modified"
+        const val EXTRA_HIGH_WATER = "high_water"
+        const val EXTRA_HAS_MORE = "has_more"
+        const val EXTRA_RESYNC = "resync"
+        const val EXTRA_TOTAL_COUNT = "total_count"
+        const val EXTRA_NEXT_PAGE = "next_after"
     }
 
     val path: String get() = this::class.simpleName.orEmpty().lowercase()
@@ -34,11 +43,68 @@ sealed class ProviderPaths {
             get() = "$contentRoot/$path"
     }
 
+    /**
+     * Empty "not_modified" cursor if nothing changed since [tag], otherwise the first album
+     */
+    class AlbumsIfModified(
+        val tag: String
+    ) : ProviderPaths() {
+        override val url: String
+            get() {
+                return buildString {
+                    append("$contentRoot/albums")
+                    appendQueries(this, ("ifNoneMatch" to tag), ("limit" to "1"))
+                }
+            }
+    }
+
+    /**
+     * [limit] albums after the page token [after] (the first page if null), by (updatedTime, album_id).
+     * The cursor's extras carry the total count and the next page's token
+     */
+    class AlbumPage(
+        val limit: Int,
+        val after: String? = null
+    ) : ProviderPaths() {
+        override val url: String
+            get() {
+                return buildString {
+                    append("$contentRoot/albums")
+                    appendQueries(this, ("limit" to limit.toString()), ("after" to after.orEmpty()))
+                }
+            }
+    }
+
     data object Artists : ProviderPaths() {
         override val url: String
             get() = "$contentRoot/$path"
     }
 
+    /**
+     * Up to [limit] item changes after the change log sequence [since], oldest first.
+     * See [ChangeReconciler][com.lasley.kts_viewer.helpers.ChangeReconciler]
+     */
+    class Changes(
+        val since: Long,
+        val limit: Int
+    ) : ProviderPaths() {
+        override val url: String
+            get() {
+                return buildString {
+                    append("$contentRoot/$path")
+                    appendQueries(this, ("since" to since.toString()), ("limit" to limit.toString()))
+                }
+            }
+    }
+
+    /**
+     * Whole catalog as one stream (openInputStream), see [readSnapshot][com.lasley.kts_viewer.helpers.readSnapshot]
+     */
+    data object Snapshot : ProviderPaths() {
+        override val url: String
+            get() = "$contentRoot/$path"
+    }
+
     class Album(
         val id: String = "",
         val query: String = ""
@@ -2,12 +2,13 @@ package com.lasley.kts_viewer.extensions
 
 import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
+import com.lasley.kts_viewer.data.JsonCodec
 import org.json.JSONObject
 
 /**
  * Converts [this] to a standard Json string
  */
-fun Any.toJson(): String = Gson().toJson(this)
+fun Any.toJson(): String = JsonCodec.gson.toJson(this)
 
 // ==== From Json to Generic
 /**
@@ -36,7 +37,7 @@ inline fun <reified T> Gson.fromJson(
 /**
  * Converts [this] as the class [T]
  */
-inline fun <reified T> String.fromJson(): T? = Gson().fromJson(this)
+inline fun <reified T> String.fromJson(): T? = JsonCodec.gson.fromJson(this)
 
 /**
  * Attempts to parse [item] as this [type][T].
@@ -57,4 +58,4 @@ inline fun <reified T> Gson.fromJson(jsonObj: JSONObject?): T? = fromJson(jsonOb
  *
  * @return [null][T] if [this] is null or unable to parse the data to [type][T]
  */
-inline fun <reified T> JSONObject?.fromJson(): T? = Gson().fromJson(toString())
\ No newline at end of file
+inline fun <reified T> JSONObject?.fromJson(): T? = JsonCodec.gson.fromJson(toString())
\ No newline at end of file
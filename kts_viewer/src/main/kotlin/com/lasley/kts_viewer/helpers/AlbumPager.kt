@@ -0,0 +1,266 @@
+package com.lasley.kts_viewer.helpers
+
+import android.content.ContentResolver
+import android.os.Handler
+import android.os.Looper
+import com.lasley.kts_viewer.data.Album
+import com.lasley.kts_viewer.data.ProviderPaths
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.abs
+
+/**
+ * Album list read from the provider a page at a time ("albums?limit=&after="),
+ * in the provider's order (updatedTime, album_id).
+ *
+ * [list] has an entry for every album; albums of pages which aren't loaded read as [Placeholder],
+ * so the list's size (and the scroll position) stays put as pages come and go.
+ * [loadAround] loads the page of a position, [behind] pages before it and [ahead] pages after it;
+ * once the pages go over [maxBytes], the ones furthest from that position are evicted.
+ *
+ * Pages are keyset-paged: page k is read with the "after" token of page k - 1. Tokens are kept
+ * for every page reached, so an evicted page is one query away; reaching a page for the first
+ * time reads the pages before it. When a page read again ends somewhere else, the next page's
+ * token moves with it, and that page is read again too.
+ * Pages are read on one background thread; [listener] is called on the main thread.
+ */
+class AlbumPager(
+    private val resolver: ContentResolver,
+    val pageSize: Int = PAGE_SIZE,
+    private val behind: Int = 1,
+    private val ahead: Int = 2,
+    private val maxBytes: Long = MAX_BYTES
+) {
+
+    /**
+     * Entry of an album which isn't loaded
+     */
+    object Placeholder
+
+    interface Listener {
+        /** Albums [start] until [start] + [count] were loaded, or evicted */
+        fun onChanged(start: Int, count: Int)
+
+        /** The number of albums changed */
+        fun onResized(size: Int)
+    }
+
+    private class Page(val albums: List<Album>, val bytes: Long) {
+        // read again when it's in the window; see [refresh]
+        @Volatile
+        var stale = false
+    }
+
+    var listener: Listener? = null
+
+    /**
+     * Number of albums; 0 until the first page is read.
+     * Only changed on the main thread, with [Listener.onResized], so an adapter never sees it move
+     */
+    var size = 0
+        private set
+
+    /**
+     * Every album, or [Placeholder] where it isn't loaded. Reads don't load anything; see [loadAround]
+     */
+    val list: List<Any> = object : AbstractList<Any>() {
+        override val size: Int
+            get() = this@AlbumPager.size
+
+        override fun get(index: Int): Any =
+            pages[index / pageSize]?.albums?.getOrNull(index % pageSize) ?: Placeholder
+    }
+
+    private val pages = ConcurrentHashMap<Int, Page>()
+
+    // page of the last [loadAround] position
+    @Volatile
+    private var anchor = 0
+
+    // only used on [executor]
+    // "after" token of each page reached; [0] is the first page (no token)
+    private val tokens = arrayListOf<String?>(null)
+    // album count as of the last page read; -1 until then
+    private var total = -1
+    private var lastPageReached = false
+    private var usedBytes = 0L
+
+    private val pumpScheduled = AtomicBoolean(false)
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "AlbumPager").apply { isDaemon = true }
+    }
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /**
+     * Loads the pages around [position], if they aren't loaded; call as rows are bound
+     */
+    fun loadAround(position: Int) {
+        anchor = maxOf(0, position) / pageSize
+        if (pumpScheduled.compareAndSet(false, true))
+            executor.execute {
+                pumpScheduled.set(false)
+                pump()
+            }
+    }
+
+    /**
+     * Reads pages again after the provider's data changed; stale pages are shown until they're
+     * read, which is only once they're in the window around the last position.
+     * Every page read keeps its token, so nothing before the window is read again.
+     *
+     * @param changes The applied changes: only the pages holding a changed album, and the last
+     * page (where updated and added albums sort to) are read again; rows of a changed artist are
+     * only redrawn. Null when unknown, e.g. after a full reload: every page is read again.
+     */
+    fun refresh(changes: ChangeReconciler.ChangeSet? = null) {
+        executor.execute {
+            if (changes == null) {
+                pages.values.forEach { it.stale = true }
+                lastPageReached = false
+            } else {
+                patch(changes)
+            }
+            pump()
+        }
+    }
+
+    private fun patch(changes: ChangeReconciler.ChangeSet) {
+        val redrawn = mutableListOf<Int>()
+        for ((index, page) in pages) {
+            page.albums.forEachIndexed { row, album ->
+                if (album.uuid in changes.albums || album.uuid in changes.removed)
+                    page.stale = true
+                else if (album.artistID in changes.artists)
+                    redrawn.add(index * pageSize + row)
+            }
+        }
+
+        if (changes.albums.isNotEmpty() || changes.removed.isNotEmpty()) {
+            // rows were added, moved or removed; the anchor's page brings the new count
+            pages[anchor]?.stale = true
+            if (lastPageReached) pages[tokens.size - 1]?.stale = true
+            lastPageReached = false
+        }
+
+        if (redrawn.isNotEmpty())
+            mainHandler.post {
+                val listener = listener ?: return@post
+                redrawn.filter { it < size }.forEach { listener.onChanged(it, 1) }
+            }
+    }
+
+    fun close() {
+        listener = null
+        executor.shutdownNow()
+    }
+
+    /**
+     * Reads the missing pages nearest [anchor] until its window is loaded.
+     * [anchor] is read again after each page, so a fast scroll only loads around where it stopped.
+     */
+    private fun pump() {
+        while (true) {
+            val target = nextMissingPage() ?: return
+            // a page without a token is reached through the pages before it
+            val page = minOf(target, tokens.size - 1)
+            if (!readPage(page)) return
+        }
+    }
+
+    private fun nextMissingPage(): Int? {
+        val center = anchor
+        val lastPage = if (total <= 0) 0 else (total - 1) / pageSize
+        val window = (center - behind..center + ahead).filter { it in 0..lastPage }
+        // the viewport's page first, then ahead, then behind
+        return window.sortedBy { if (it >= center) it - center else ahead + center - it }
+            .firstOrNull { pages[it]?.stale != false && reachable(it) }
+    }
+
+    private fun reachable(page: Int) = page < tokens.size || !lastPageReached
+
+    /**
+     * @return false if the page couldn't be read
+     */
+    private fun readPage(page: Int): Boolean {
+        var count = -1
+        var next: String? = null
+        val albums = tryOrNull {
+            resolver.query(
+                ProviderPaths.AlbumPage(pageSize, tokens[page]).uri, null, null, null, null
+            )?.use { cursor ->
+                count = cursor.extras.getInt(ProviderPaths.EXTRA_TOTAL_COUNT, -1)
+                next = cursor.extras.getString(ProviderPaths.EXTRA_NEXT_PAGE)
+                cursor.toAlbumSeq().toList()
+            }
+        } ?: return false
+
+        if (page == tokens.size - 1) {
+            if (next != null) tokens.add(next) else lastPageReached = true
+        } else if (next == null) {
+            // the list now ends here
+            tokens.subList(page + 1, tokens.size).clear()
+            lastPageReached = true
+            pages.keys.filter { it > page }
+                .forEach { dropped -> pages.remove(dropped)?.also { usedBytes -= it.bytes } }
+        } else if (next != tokens[page + 1]) {
+            // rows moved across the page's end; the next page starts somewhere else
+            tokens[page + 1] = next
+            pages[page + 1]?.stale = true
+        }
+
+        val bytes = albums.sumOf { estimateBytes(it) }
+        pages.put(page, Page(albums, bytes))?.also { usedBytes -= it.bytes }
+        usedBytes += bytes
+
+        val resized = count >= 0 && count != total
+        if (resized) total = count
+        val evicted = evict()
+        mainHandler.post {
+            if (resized) size = count
+            val listener = listener ?: return@post
+            if (resized) {
+                listener.onResized(count)
+                return@post
+            }
+            (evicted + page).forEach {
+                val start = it * pageSize
+                val end = minOf(size, start + pageSize)
+                if (start < end) listener.onChanged(start, end - start)
+            }
+        }
+        return true
+    }
+
+    /**
+     * Drops the pages furthest from [anchor] until the pages fit in [maxBytes];
+     * the window around [anchor] is always kept
+     *
+     * @return The evicted pages
+     */
+    private fun evict(): List<Int> {
+        if (usedBytes <= maxBytes) return emptyList()
+        val center = anchor
+        val evicted = mutableListOf<Int>()
+        val candidates = pages.keys
+            .filter { it !in center - behind..center + ahead }
+            .sortedByDescending { abs(it - center) }
+
+        for (page in candidates) {
+            if (usedBytes <= maxBytes) break
+            pages.remove(page)?.also { usedBytes -= it.bytes }
+            evicted.add(page)
+        }
+        return evicted
+    }
+
+    companion object {
+        const val PAGE_SIZE = 100
+        const val MAX_BYTES = 2L * 1024 * 1024
+
+        // object headers and fields, plus the strings (UTF-16)
+        private fun estimateBytes(album: Album): Long =
+            96L + 2L * (album.uuid.length + album.artistID.length + (album.name?.length ?: 0))
+    }
+}
@@ -0,0 +1,161 @@
+package com.lasley.kts_viewer.helpers
+
+import android.content.ContentResolver
+import android.database.Cursor
+import com.lasley.kts_viewer.data.Album
+import com.lasley.kts_viewer.data.Artist
+import com.lasley.kts_viewer.data.CommonInf
+import com.lasley.kts_viewer.data.JsonCodec
+import com.lasley.kts_viewer.data.LocalDatabase
+import com.lasley.kts_viewer.data.ProviderPaths
+
+/**
+ * Brings [LocalDatabase] up to date from the provider's change log ("changes?since="),
+ * applying each insert, update and delete by item ID.
+ *
+ * [pull] reads every change after [highWater], a page at a time; it gives up (null) when the
+ * provider asks for a resync, or when there are more than [MAX_CHANGES], and a full reload
+ * is cheaper. Not thread-safe; the caller runs one sync at a time.
+ *
+ * @param storeAlbums false if albums aren't kept locally (see [AlbumPager]); album changes are
+ * still reported in the [ChangeSet]
+ */
+class ChangeReconciler(
+    private val resolver: ContentResolver,
+    private val storeAlbums: Boolean = true
+) {
+
+    /**
+     * One changed item; [item] is null when it was deleted, or couldn't be read
+     */
+    class Change(val type: String, val id: String, val deleted: Boolean, val item: CommonInf?)
+
+    /**
+     * @param highWater Sequence to send as "since" next
+     * @param tag Data tag as of the first page; older than the changes, so it's safe to resend
+     */
+    class Pull(val changes: List<Change>, val highWater: Long, val tag: String?)
+
+    /**
+     * IDs which were applied; empty when nothing changed
+     */
+    data class ChangeSet(
+        val albums: Set<String> = emptySet(),
+        val artists: Set<String> = emptySet(),
+        val removed: Set<String> = emptySet()
+    ) {
+        val isEmpty: Boolean
+            get() = albums.isEmpty() && artists.isEmpty() && removed.isEmpty()
+    }
+
+    /**
+     * Change log sequence the local data is current to; null if unknown (full reload needed)
+     */
+    @Volatile
+    var highWater: Long? = null
+
+    /**
+     * Current end of the provider's change log; a full load read after this misses no change,
+     * once the changes after it are applied.
+     * Asks for the changes since -1, which is always older than the log, so the provider
+     * answers with a resync and its current position.
+     *
+     * @return null if the provider couldn't be asked
+     */
+    fun position(): Long? = tryOrNull {
+        resolver.query(
+            ProviderPaths.Changes(-1, 1).uri, null, null, null, null
+        )?.use { cursor ->
+            val extras = cursor.extras
+            if (extras.containsKey(ProviderPaths.EXTRA_HIGH_WATER))
+                extras.getLong(ProviderPaths.EXTRA_HIGH_WATER) else null
+        }
+    }
+
+    /**
+     * @return Changes after [highWater], or null if they can't be applied incrementally
+     */
+    fun pull(): Pull? {
+        var since = highWater ?: return null
+        val changes = ArrayList<Change>()
+        var tag: String? = null
+
+        while (true) {
+            val hasMore = tryOrNull {
+                resolver.query(
+                    ProviderPaths.Changes(since, PAGE_SIZE).uri, null, null, null, null
+                )?.use { page ->
+                    val extras = page.extras
+                    if (extras.getBoolean(ProviderPaths.EXTRA_RESYNC)) return@tryOrNull null
+                    if (tag == null) tag = extras.getString(ProviderPaths.EXTRA_TAG)
+
+                    readChanges(page, changes)
+                    since = extras.getLong(ProviderPaths.EXTRA_HIGH_WATER, since)
+                    extras.getBoolean(ProviderPaths.EXTRA_HAS_MORE)
+                }
+            } ?: return null
+
+            if (changes.size > MAX_CHANGES) return null
+            if (!hasMore) break
+        }
+        return Pull(changes, since, tag)
+    }
+
+    /**
+     * Applies [pull] to [LocalDatabase], and moves [highWater] past it
+     */
+    fun apply(pull: Pull): ChangeSet {
+        val albums = HashSet<String>()
+        val artists = HashSet<String>()
+        val removed = HashSet<String>()
+
+        for (change in pull.changes) {
+            val item = change.item
+            when {
+                change.deleted -> {
+                    val wasStored = LocalDatabase.remove(change.id)
+                    // albums which aren't stored may still be on a shown page
+                    if (wasStored || (!storeAlbums && change.type == "album")) removed.add(change.id)
+                }
+                item is Album -> {
+                    if (storeAlbums) LocalDatabase.update(change.id, item)
+                    albums.add(change.id)
+                }
+                item is Artist -> {
+                    LocalDatabase.update(change.id, item)
+                    artists.add(change.id)
+                }
+            }
+        }
+
+        highWater = pull.highWater
+        return ChangeSet(albums, artists, removed)
+    }
+
+    private fun readChanges(page: Cursor, into: MutableList<Change>) {
+        val type = page.getColumnIndexOrThrow("type")
+        val id = page.getColumnIndexOrThrow("item_id")
+        val deleted = page.getColumnIndexOrThrow("deleted")
+        val content = page.getColumnIndexOrThrow("content")
+
+        while (page.moveToNext()) {
+            val isDeleted = page.getInt(deleted) != 0
+            val json = if (isDeleted || page.isNull(content)) null else page.getString(content)
+            val item: CommonInf? = json?.let {
+                when (page.getString(type)) {
+                    "album" -> tryOrNull { JsonCodec.gson.fromJson(it, Album::class.java) }
+                    "artist" -> tryOrNull { JsonCodec.gson.fromJson(it, Artist::class.java) }
+                    else -> null
+                }
+            }
+            into.add(Change(page.getString(type), page.getString(id), isDeleted, item))
+        }
+    }
+
+    companion object {
+        const val PAGE_SIZE = 500
+
+        // past this, one snapshot stream is cheaper than applying the changes
+        const val MAX_CHANGES = 5_000
+    }
+}
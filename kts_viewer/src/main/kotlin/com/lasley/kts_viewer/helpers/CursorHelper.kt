@@ -1,8 +1,16 @@
 package com.lasley.kts_viewer.helpers
 
 import android.database.Cursor
+import com.lasley.kts_viewer.data.Album
+import com.lasley.kts_viewer.data.Artist
 import com.lasley.kts_viewer.extensions.fromJson
 
+/**
+ * Rows as JSON objects, with every value as a string.
+ *
+ * Builds and parses a string per row, and doesn't escape the values;
+ * prefer the typed readers ([toAlbumSeq], [toArtistSeq]).
+ */
 fun Cursor?.toJsonSeq(): Sequence<String> {
     if (this == null) return emptySequence()
 
@@ -19,4 +27,62 @@ fun Cursor?.toJsonSeq(): Sequence<String> {
 
 inline fun <reified T> Cursor?.toObjSeq(): Sequence<T> {
     return toJsonSeq().mapNotNull { it.fromJson() }
-}
\ No newline at end of file
+}
+
+/**
+ * Rows of [this], each read by the reader which [readerFor] makes for the cursor.
+ * The sequence moves the cursor; it can be iterated once.
+ */
+fun <T> Cursor?.mapRows(readerFor: (Cursor) -> (Cursor) -> T): Sequence<T> {
+    if (this == null || count == 0) return emptySequence()
+    moveToPosition(-1)
+    val read = readerFor(this)
+    return generateSequence { if (moveToNext()) read(this) else null }
+}
+
+fun Cursor?.toAlbumSeq(): Sequence<Album> = mapRows(RowReaders::album)
+
+fun Cursor?.toArtistSeq(): Sequence<Artist> = mapRows(RowReaders::artist)
+
+/**
+ * Typed row readers; the column indices are looked up once per cursor, and each row is read
+ * straight into the item. Columns missing from the cursor keep the item's defaults.
+ */
+object RowReaders {
+
+    fun album(cursor: Cursor): (Cursor) -> Album {
+        val id = cursor.getColumnIndex("album_id")
+        val name = cursor.getColumnIndex("name")
+        val artistID = cursor.getColumnIndex("artist_id")
+        val createdTime = cursor.getColumnIndex("createdTime")
+        val updatedTime = cursor.getColumnIndex("updatedTime")
+
+        return { row ->
+            Album(row.stringAt(name), row.stringAt(artistID).orEmpty()).apply {
+                row.stringAt(id)?.also { uuid = it }
+                if (createdTime >= 0) this.createdTime = row.getLong(createdTime)
+                if (updatedTime >= 0) this.updatedTime = row.getLong(updatedTime)
+            }
+        }
+    }
+
+    fun artist(cursor: Cursor): (Cursor) -> Artist {
+        val id = cursor.getColumnIndex("artist_id")
+        val name = cursor.getColumnIndex("name")
+        val albumIDs = cursor.getColumnIndex("album_ids")
+        val createdTime = cursor.getColumnIndex("createdTime")
+        val updatedTime = cursor.getColumnIndex("updatedTime")
+
+        return { row ->
+            Artist(row.stringAt(name).orEmpty()).apply {
+                row.stringAt(id)?.also { uuid = it }
+                this.albumIDs = row.stringAt(albumIDs).orEmpty()
+                if (createdTime >= 0) this.createdTime = row.getLong(createdTime)
+                if (updatedTime >= 0) this.updatedTime = row.getLong(updatedTime)
+            }
+        }
+    }
+
+    private fun Cursor.stringAt(index: Int): String? =
+        if (index < 0 || isNull(index)) null else getString(index)
+}
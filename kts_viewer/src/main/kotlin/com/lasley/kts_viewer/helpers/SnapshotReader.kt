@@ -0,0 +1,114 @@
+package com.lasley.kts_viewer.helpers
+
+import android.content.ContentResolver
+import com.google.gson.JsonParser
+import com.lasley.kts_viewer.data.Album
+import com.lasley.kts_viewer.data.Artist
+import com.lasley.kts_viewer.data.CommonInf
+import com.lasley.kts_viewer.data.JsonCodec
+import com.lasley.kts_viewer.data.ProviderPaths
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+
+/**
+ * Reads the provider's "snapshot" stream, one record at a time.
+ *
+ * Each record is a type byte, the content length (int, big-endian), then the content (JSON):
+ * a header, the artists, the albums, then an empty end record.
+ * Only one record is held at a time, so the whole catalog is never buffered.
+ */
+class SnapshotReader(input: InputStream) : Closeable {
+
+    /**
+     * @param highWater Change log sequence the snapshot is current to; send as "since" next
+     * @param tag Data tag the snapshot is current to; send as "ifNoneMatch" next
+     */
+    data class Header(val highWater: Long, val tag: String?, val albums: Int, val artists: Int)
+
+    private val stream = DataInputStream(BufferedInputStream(input, 64 * 1024))
+    private var buffer = ByteArray(1024)
+
+    var header: Header? = null
+        private set
+
+    /**
+     * True once the end record was read; the snapshot is only complete if this is set
+     */
+    var completed = false
+        private set
+
+    /**
+     * Items in stream order; artists, then albums.
+     *
+     * @throws EOFException (while iterating) if the stream was cut short
+     */
+    fun items(): Sequence<CommonInf> = sequence {
+        while (!completed) {
+            val type = stream.readByte()
+            val length = stream.readInt()
+            if (length !in 0..MAX_RECORD_SIZE)
+                throw IOException("Bad record length: $length")
+            if (buffer.size < length)
+                buffer = ByteArray(maxOf(length, buffer.size * 2))
+            stream.readFully(buffer, 0, length)
+
+            when (type) {
+                RECORD_HEADER -> header = readHeader(length)
+                RECORD_ARTIST -> decode(length, Artist::class.java)?.also { yield(it) }
+                RECORD_ALBUM -> decode(length, Album::class.java)?.also { yield(it) }
+                RECORD_END -> completed = true
+                // newer record types are skipped
+                else -> Unit
+            }
+        }
+    }
+
+    private fun contentReader(length: Int) =
+        InputStreamReader(ByteArrayInputStream(buffer, 0, length), Charsets.UTF_8)
+
+    private fun <T> decode(length: Int, type: Class<T>): T? =
+        tryOrNull { JsonCodec.gson.fromJson(contentReader(length), type) }
+
+    private fun readHeader(length: Int): Header {
+        val json = JsonParser.parseReader(contentReader(length)).asJsonObject
+        return Header(
+            highWater = json.get("high_water")?.asLong ?: 0,
+            tag = json.get("tag")?.takeUnless { it.isJsonNull }?.asString,
+            albums = json.get("albums")?.asInt ?: 0,
+            artists = json.get("artists")?.asInt ?: 0
+        )
+    }
+
+    override fun close() = stream.close()
+
+    companion object {
+        const val RECORD_HEADER = 'H'.code.toByte()
+        const val RECORD_ARTIST = 'R'.code.toByte()
+        const val RECORD_ALBUM = 'A'.code.toByte()
+        const val RECORD_END = 'E'.code.toByte()
+
+        // no single item comes close; anything larger is a corrupt stream
+        private const val MAX_RECORD_SIZE = 4 * 1024 * 1024
+    }
+}
+
+/**
+ * Streams the provider's whole catalog into [onItem], as it's read.
+ *
+ * @return The snapshot's header, or null if the snapshot is unavailable or was cut short
+ */
+fun ContentResolver.readSnapshot(onItem: (CommonInf) -> Unit): SnapshotReader.Header? {
+    return tryOrNull {
+        val input = openInputStream(ProviderPaths.Snapshot.uri) ?: return@tryOrNull null
+        SnapshotReader(input).use { reader ->
+            reader.items().forEach(onItem)
+            if (reader.completed) reader.header else null
+        }
+    }
+}